@@ -19,11 +19,14 @@
 package org.idea.processing.plugin;
 
 import com.intellij.openapi.module.Module;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.search.GlobalSearchScope;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.io.LocalFileFinder;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
@@ -56,4 +59,16 @@ public enum ProcessingPluginUtil {
 
         return scope;
     }
+
+    /*
+        Hex encoded SHA-1 hash of the given contents, by which converted PDE tabs are identified.
+     */
+    @NotNull
+    public String sha1(@NotNull byte[] contents) {
+        try {
+            return StringUtil.toHexString(MessageDigest.getInstance("SHA-1").digest(contents));
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException("SHA-1 message digests are not supported by this JVM.", nsae);
+        }
+    }
 }
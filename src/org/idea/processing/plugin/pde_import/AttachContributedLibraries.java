@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.pde_import;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModifiableRootModel;
+import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.roots.OrderRootType;
+import com.intellij.openapi.roots.libraries.Library;
+import com.intellij.openapi.roots.libraries.LibraryTable;
+import com.intellij.openapi.roots.libraries.LibraryTablesRegistrar;
+import com.intellij.openapi.vfs.VfsUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.*;
+
+/**
+    Attaches the contributed libraries used by a sketch to its modules. Each contributed library is created once as a project
+    library, and shared by the modules of every sketch that imports it. Must be run from within a write action.
+ */
+class AttachContributedLibraries implements Runnable {
+
+    private final Logger logger = com.intellij.openapi.diagnostic.Logger.getInstance(AttachContributedLibraries.class);
+
+    static final String CONTRIBUTED_LIBRARY_NAME_PREFIX = "processing-library-";
+
+    private final Project project;
+    private final Collection<Module> modules;
+    private final Collection<ContributedLibraryIndex.ContributedLibrary> contributedLibraries;
+
+    AttachContributedLibraries(@NotNull Project project, @NotNull Collection<Module> modules,
+                               @NotNull Collection<ContributedLibraryIndex.ContributedLibrary> contributedLibraries) {
+        this.project = project;
+        this.modules = modules;
+        this.contributedLibraries = contributedLibraries;
+    }
+
+    @Override
+    public void run() {
+        if (project.isDisposed()) {
+            logger.warn("The project '" + project.getName() + "' has been disposed. Cannot attach " + contributedLibraries.size() + " contributed libraries.");
+            return;
+        }
+
+        LibraryTable projectLibraryTable = LibraryTablesRegistrar.getInstance().getLibraryTable(project);
+        List<Library> projectLibraries = new ArrayList<>(contributedLibraries.size());
+
+        for (ContributedLibraryIndex.ContributedLibrary contributedLibrary : contributedLibraries) {
+            projectLibraries.add(findOrCreateProjectLibrary(projectLibraryTable, contributedLibrary));
+        }
+
+        for (Module module : modules) {
+            if (module.isDisposed()) {
+                logger.warn("The module '" + module.getName() + "' has been disposed. Cannot attach contributed libraries to it.");
+                continue;
+            }
+
+            ModifiableRootModel rootModel = ModuleRootManager.getInstance(module).getModifiableModel();
+            boolean modified = false;
+
+            for (Library projectLibrary : projectLibraries) {
+                if (rootModel.findLibraryOrderEntry(projectLibrary) == null) {
+                    rootModel.addLibraryEntry(projectLibrary);
+                    modified = true;
+                }
+            }
+
+            if (modified) {
+                rootModel.commit();
+            } else {
+                rootModel.dispose();
+            }
+        }
+
+        logger.info("Attached " + projectLibraries.size() + " contributed libraries to " + modules.size() + " modules.");
+    }
+
+    /*
+        A library of the same name, already created for another sketch, is shared. Its jars are replaced where the library has
+        since been updated in the sketchbook.
+     */
+    @NotNull
+    private Library findOrCreateProjectLibrary(@NotNull LibraryTable projectLibraryTable,
+                                               @NotNull ContributedLibraryIndex.ContributedLibrary contributedLibrary) {
+        String libraryName = CONTRIBUTED_LIBRARY_NAME_PREFIX + contributedLibrary.getName();
+        Library projectLibrary = projectLibraryTable.getLibraryByName(libraryName);
+
+        if (projectLibrary == null) {
+            LibraryTable.ModifiableModel projectLibraryModel = projectLibraryTable.getModifiableModel();
+            projectLibrary = projectLibraryModel.createLibrary(libraryName);
+            projectLibraryModel.commit();
+        }
+
+        Set<String> jarUrls = new LinkedHashSet<>();
+
+        for (File jar : contributedLibrary.getJars()) {
+            jarUrls.add(VfsUtil.getUrlForLibraryRoot(jar));
+        }
+
+        if (! jarUrls.equals(new LinkedHashSet<>(Arrays.asList(projectLibrary.getUrls(OrderRootType.CLASSES))))) {
+            Library.ModifiableModel libraryModel = projectLibrary.getModifiableModel();
+
+            for (String attachedUrl : libraryModel.getUrls(OrderRootType.CLASSES)) {
+                libraryModel.removeRoot(attachedUrl, OrderRootType.CLASSES);
+            }
+
+            for (String jarUrl : jarUrls) {
+                libraryModel.addRoot(jarUrl, OrderRootType.CLASSES);
+            }
+
+            libraryModel.commit();
+        }
+
+        return projectLibrary;
+    }
+}
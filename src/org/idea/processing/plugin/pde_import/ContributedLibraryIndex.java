@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.pde_import;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+    Index of the contributed libraries installed in a sketchbook, at '&lt;sketchbook&gt;/libraries/&lt;library&gt;/library/*.jar',
+    by the packages of the classes in their jars. Import statements of a sketch are resolved against the index to find the
+    libraries that the sketch uses.
+
+    An index is built once for each sketchbook, and shared by all of the sketches imported from it. It is built again only
+    where a library, or one of its jars, has been added, removed or modified since.
+ */
+class ContributedLibraryIndex {
+
+    private static final Logger logger = com.intellij.openapi.diagnostic.Logger.getInstance(ContributedLibraryIndex.class);
+
+    private static final String LIBRARIES_DIRECTORY_NAME = "libraries";
+    private static final String LIBRARY_JAR_DIRECTORY_NAME = "library";
+
+    private static final Map<String, ContributedLibraryIndex> INDEXES_BY_LIBRARIES_PATH = new HashMap<>();
+
+    private final List<Long> modificationStamps;
+    private final Map<String, ContributedLibrary> librariesByPackage = new HashMap<>();
+
+    private ContributedLibraryIndex(@NotNull List<Long> modificationStamps) {
+        this.modificationStamps = modificationStamps;
+    }
+
+    /*
+        The index of the libraries of the sketchbook containing the given sketch, or an empty index where the sketchbook has
+        no libraries folder.
+     */
+    @NotNull
+    static ContributedLibraryIndex forSketch(@NotNull String sketchRoot) {
+        File sketchbookRoot = new File(sketchRoot).getAbsoluteFile().getParentFile();
+
+        if (sketchbookRoot == null) {
+            return new ContributedLibraryIndex(Collections.emptyList());
+        }
+
+        return forLibrariesDirectory(new File(sketchbookRoot, LIBRARIES_DIRECTORY_NAME));
+    }
+
+    /*
+        Synchronized, so that sketches of a sketchbook imported concurrently wait for a single index to be built.
+     */
+    @NotNull
+    static synchronized ContributedLibraryIndex forLibrariesDirectory(@NotNull File librariesDirectory) {
+        List<File> libraryJars = new ArrayList<>();
+        List<Long> modificationStamps = new ArrayList<>();
+
+        modificationStamps.add(librariesDirectory.lastModified());
+
+        for (File libraryDirectory : listFiles(librariesDirectory, File::isDirectory)) {
+            File jarDirectory = new File(libraryDirectory, LIBRARY_JAR_DIRECTORY_NAME);
+            modificationStamps.add(jarDirectory.lastModified());
+
+            for (File libraryJar : listFiles(jarDirectory, file -> file.getName().endsWith(".jar"))) {
+                libraryJars.add(libraryJar);
+                modificationStamps.add(libraryJar.lastModified());
+                modificationStamps.add(libraryJar.length());
+            }
+        }
+
+        ContributedLibraryIndex index = INDEXES_BY_LIBRARIES_PATH.get(librariesDirectory.getPath());
+
+        if (index == null || ! index.modificationStamps.equals(modificationStamps)) {
+            index = new ContributedLibraryIndex(modificationStamps);
+            index.indexLibraryJars(libraryJars);
+
+            INDEXES_BY_LIBRARIES_PATH.put(librariesDirectory.getPath(), index);
+
+            logger.info("Indexed " + libraryJars.size() + " contributed library jars in '" + librariesDirectory + "', providing "
+                    + index.librariesByPackage.size() + " packages.");
+        }
+
+        return index;
+    }
+
+    /*
+        The libraries providing the given imported names, which are either the qualified names of imported classes, of
+        statically imported members, or of packages imported on demand.
+     */
+    @NotNull
+    Collection<ContributedLibrary> resolve(@NotNull Collection<String> importedNames) {
+        Map<String, ContributedLibrary> resolvedLibraries = new TreeMap<>();
+
+        for (String importedName : importedNames) {
+            ContributedLibrary library = findLibrary(importedName);
+
+            if (library != null) {
+                resolvedLibraries.put(library.getName(), library);
+            }
+        }
+
+        return resolvedLibraries.values();
+    }
+
+    @Nullable
+    private ContributedLibrary findLibrary(@NotNull String importedName) {
+        String name = importedName;
+
+        while (true) {
+            ContributedLibrary library = librariesByPackage.get(name);
+
+            if (library != null) {
+                return library;
+            }
+
+            int lastDot = name.lastIndexOf('.');
+
+            if (lastDot < 0) {
+                return null;
+            }
+
+            name = name.substring(0, lastDot);
+        }
+    }
+
+    private void indexLibraryJars(@NotNull List<File> libraryJars) {
+        Map<File, ContributedLibrary> librariesByJarDirectory = new HashMap<>();
+
+        for (File libraryJar : libraryJars) {
+            File jarDirectory = libraryJar.getParentFile();
+
+            // All of the jars of a library are attached together, as they may depend upon one another.
+            ContributedLibrary library = librariesByJarDirectory.computeIfAbsent(jarDirectory,
+                    directory -> new ContributedLibrary(directory.getParentFile().getName()));
+            library.jars.add(libraryJar);
+
+            try (ZipFile jar = new ZipFile(libraryJar)) {
+                Enumeration<? extends ZipEntry> entries = jar.entries();
+
+                while (entries.hasMoreElements()) {
+                    String entryName = entries.nextElement().getName();
+                    int lastSlash = entryName.lastIndexOf('/');
+
+                    if (lastSlash > 0 && entryName.endsWith(".class")) {
+                        // Where libraries share a package, the first library to provide it keeps it.
+                        librariesByPackage.putIfAbsent(entryName.substring(0, lastSlash).replace('/', '.'), library);
+                    }
+                }
+            } catch (IOException io) {
+                logger.warn("Unable to read the contributed library jar '" + libraryJar + "'. It will not be indexed.", io);
+            }
+        }
+    }
+
+    @NotNull
+    private static List<File> listFiles(@NotNull File directory, @NotNull FileFilter filter) {
+        File[] files = directory.listFiles(filter);
+
+        if (files == null) {
+            return Collections.emptyList();
+        }
+
+        // Sorted, so that the modification stamps of unchanged libraries are listed in the same order.
+        Arrays.sort(files);
+
+        return Arrays.asList(files);
+    }
+
+    /**
+        A contributed library, and the jars in its library folder.
+     */
+    static class ContributedLibrary {
+        private final String name;
+        private final List<File> jars = new ArrayList<>();
+
+        private ContributedLibrary(@NotNull String name) {
+            this.name = name;
+        }
+
+        @NotNull
+        String getName() {
+            return name;
+        }
+
+        @NotNull
+        List<File> getJars() {
+            return jars;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.pde_import;
+
+import com.intellij.ide.highlighter.ModuleFileType;
+import com.intellij.ide.plugins.PluginManager;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ApplicationStarterEx;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.extensions.PluginId;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.PathUtil;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.io.xpp3.MavenXpp3Writer;
+import org.idea.processing.plugin.project_creation.ProcessingModuleBuilder;
+import org.idea.processing.plugin.project_creation.dependency.DependencyResolutionBundle;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+    Converts a sketch, or each of the sketches of a sketchbook, into a Maven module of a new project, without a display:
+
+    <pre>
+    idea processing-convert &lt;sketch or sketchbook directory&gt; &lt;output directory&gt; [--threads=N] [--processing-version=X.Y.Z] [--validate]
+    </pre>
+
+    Sketches are converted concurrently by the same {@link ImportSketchbook} import used by the sketchbook import wizard. A
+    report of the time taken to convert each sketch is printed once all of them have completed. The exit code is 0 when every
+    sketch was converted, 2 when some were not, and 1 when the conversion could not be run at all.
+
+    With --validate, the converted sources of each sketch are compiled in memory against the installed Processing library of
+    the given version before they are written, and a sketch that does not compile is reported with its errors instead.
+ */
+public class ConvertSketchbookCommand extends ApplicationStarterEx {
+
+    private final Logger logger = com.intellij.openapi.diagnostic.Logger.getInstance(ConvertSketchbookCommand.class);
+
+    private static final String THREADS_OPTION = "--threads=";
+    private static final String PROCESSING_VERSION_OPTION = "--processing-version=";
+    private static final String VALIDATE_OPTION = "--validate";
+
+    private static final int PARTIAL_FAILURE_EXIT_CODE = 2;
+
+    private String sketchbookRoot;
+    private File outputDirectory;
+    private int threadCount;
+    private String processingVersion = DependencyResolutionBundle.key("earliest_processing_version_supported");
+    private boolean validateConvertedSources;
+    private String compileCheckClassPath;
+
+    @Override
+    public String getCommandName() {
+        return "processing-convert";
+    }
+
+    @Override
+    public boolean isHeadless() {
+        return true;
+    }
+
+    @Override
+    public void premain(String[] args) {
+        // The first argument is the command name.
+        List<String> positionalArgs = new ArrayList<>(2);
+
+        for (int argIndex = 1; argIndex < args.length; argIndex++) {
+            String arg = args[argIndex];
+
+            if (arg.startsWith(THREADS_OPTION)) {
+                try {
+                    threadCount = Math.max(1, Integer.parseInt(arg.substring(THREADS_OPTION.length())));
+                } catch (NumberFormatException nfe) {
+                    System.err.println("The thread count '" + arg.substring(THREADS_OPTION.length()) + "' is not a number.");
+                    exitWithUsage();
+                }
+            } else if (arg.startsWith(PROCESSING_VERSION_OPTION)) {
+                processingVersion = arg.substring(PROCESSING_VERSION_OPTION.length());
+            } else if (arg.equals(VALIDATE_OPTION)) {
+                validateConvertedSources = true;
+            } else {
+                positionalArgs.add(arg);
+            }
+        }
+
+        if (positionalArgs.size() != 2) {
+            exitWithUsage();
+        }
+
+        if (threadCount == 0) {
+            threadCount = ImportSketchbook.defaultThreadCount(validateConvertedSources);
+        }
+
+        sketchbookRoot = new File(positionalArgs.get(0)).getAbsolutePath();
+        outputDirectory = new File(positionalArgs.get(1)).getAbsoluteFile();
+    }
+
+    private void exitWithUsage() {
+        System.err.println("Usage: " + getCommandName() + " <sketch or sketchbook directory> <output directory> [" +
+                THREADS_OPTION + "N] [" + PROCESSING_VERSION_OPTION + "X.Y.Z] [" + VALIDATE_OPTION + "]");
+        System.exit(1);
+    }
+
+    @Override
+    public void main(String[] args) {
+        HeadlessProjects.runAndExit(getCommandName(), this::convertSketchbook);
+    }
+
+    private int convertSketchbook() throws IOException {
+        SketchFolderScan sketchbookScan = SketchFolderScan.scan(sketchbookRoot);
+
+        // A root with PDE files of its own is a single sketch, rather than a sketchbook.
+        List<String> sketchRoots = sketchbookScan.getPdeFiles().isEmpty() ?
+                new ArrayList<>(sketchbookScan.getSketchFolders()) : Collections.singletonList(sketchbookRoot);
+
+        if (sketchRoots.isEmpty()) {
+            System.err.println("No sketches were found at '" + sketchbookRoot + "'.");
+            return 1;
+        }
+
+        if (validateConvertedSources) {
+            compileCheckClassPath = findInstalledProcessingClassPath();
+
+            if (compileCheckClassPath.isEmpty()) {
+                System.err.println("Processing " + processingVersion + " is not installed. Converted sources will be written without being compiled.");
+            }
+        }
+
+        System.out.println("Converting " + sketchRoots.size() + " sketches from '" + sketchbookRoot + "' into '" + outputDirectory + "' on " + threadCount + " threads.");
+
+        Project project = HeadlessProjects.openProject(outputDirectory, PathUtil.getFileName(sketchbookRoot));
+
+        List<ImportSketchbook.SketchImportResult> results;
+        long startTime = System.currentTimeMillis();
+
+        try {
+            List<ImportSketchClasses> sketchImports = new ArrayList<>(sketchRoots.size());
+            Set<String> moduleNames = new HashSet<>();
+
+            for (String sketchRoot : sketchRoots) {
+                String moduleName = ImportSketchbook.uniqueModuleName(PathUtil.getFileName(sketchRoot), moduleNames);
+                File moduleContentRoot = new File(outputDirectory, moduleName);
+
+                Module sketchModule = createSketchModule(project, moduleName, moduleContentRoot);
+
+                if (sketchModule == null) {
+                    System.err.println("Unable to create a module for the sketch at '" + sketchRoot + "'. The sketch will not be converted.");
+                    continue;
+                }
+
+                writeSketchPom(moduleName, moduleContentRoot);
+
+                sketchImports.add(new ImportSketchClasses(null, project, Collections.singletonList(sketchModule), createSketchParameters(sketchRoot)));
+            }
+
+            ImportSketchbook sketchbookImport = new ImportSketchbook(null, project, sketchImports, threadCount);
+            sketchbookImport.run(new EmptyProgressIndicator());
+
+            results = sketchbookImport.getResults();
+        } finally {
+            HeadlessProjects.saveAndClose(project);
+        }
+
+        return printReport(sketchRoots.size(), results, System.currentTimeMillis() - startTime);
+    }
+
+    @Nullable
+    private Module createSketchModule(@NotNull Project project, @NotNull String moduleName, @NotNull File moduleContentRoot) {
+        if (! FileUtil.createDirectory(moduleContentRoot)) {
+            logger.warn("Unable to create the module directory '" + moduleContentRoot + "'.");
+            return null;
+        }
+
+        ProcessingModuleBuilder sketchModuleBuilder = new ProcessingModuleBuilder();
+        sketchModuleBuilder.setGenerateTemplateSketchClass(false);
+        sketchModuleBuilder.setName(moduleName);
+        sketchModuleBuilder.setContentEntryPath(moduleContentRoot.getPath());
+        sketchModuleBuilder.setModuleFilePath(Paths.get(moduleContentRoot.getPath(), moduleName + ModuleFileType.DOT_DEFAULT_EXTENSION).toString());
+
+        Ref<Module> sketchModule = Ref.create();
+
+        ApplicationManager.getApplication().invokeAndWait(() ->
+                sketchModule.set(sketchModuleBuilder.commitModule(project, null)), ModalityState.NON_MODAL);
+
+        return sketchModule.get();
+    }
+
+    /*
+        The Processing library is not attached to the modules, as its resolution is driven by the project wizard. Each module is
+        instead given a POM, so that the converted sketches can be built outside of the IDE.
+     */
+    private void writeSketchPom(@NotNull String moduleName, @NotNull File moduleContentRoot) throws IOException {
+        Model sketchModel = new Model();
+        sketchModel.setModelVersion("4.0.0");
+        sketchModel.setGroupId("com.processing.sketch");
+        sketchModel.setArtifactId(moduleName);
+        sketchModel.setVersion("1.0.0");
+
+        sketchModel.addProperty("maven.compiler.source", "1.8");
+        sketchModel.addProperty("maven.compiler.target", "1.8");
+        sketchModel.addProperty("project.build.sourceEncoding", "UTF-8");
+
+        Dependency core = new Dependency();
+        core.setGroupId("org.processing");
+        core.setArtifactId("core");
+        core.setVersion(processingVersion);
+        sketchModel.addDependency(core);
+
+        sketchModel.setBuild(new Build());
+
+        try (Writer pomWriter = new FileWriter(new File(moduleContentRoot, "pom.xml"))) {
+            new MavenXpp3Writer().write(pomWriter, sketchModel);
+        }
+    }
+
+    /*
+        The jars of the Processing library of the given version, as installed by the project wizard.
+     */
+    @NotNull
+    private String findInstalledProcessingClassPath() {
+        File dependencyRoot = new File(PluginManager.getPlugin(PluginId.getId("org.idea.processing.plugin")).getPath(),
+                DependencyResolutionBundle.key("dependency_root"));
+        File installedVersionDirectory = new File(dependencyRoot, processingVersion);
+
+        File[] installedJars = installedVersionDirectory.listFiles((directory, name) -> name.endsWith(".jar"));
+
+        if (installedJars == null) {
+            return "";
+        }
+
+        StringJoiner classPath = new StringJoiner(File.pathSeparator);
+
+        for (File installedJar : installedJars) {
+            classPath.add(installedJar.getPath());
+        }
+
+        return classPath.toString();
+    }
+
+    @NotNull
+    private ProcessingImportBuilder.Parameters createSketchParameters(@NotNull String sketchRoot) {
+        SketchFolderScan sketchScan = SketchFolderScan.scan(sketchRoot);
+
+        ProcessingImportBuilder.Parameters sketchParameters = new ProcessingImportBuilder.Parameters();
+        sketchParameters.root = sketchRoot;
+        sketchParameters.importablePdeFiles = sketchScan.getPdeFiles();
+        sketchParameters.importableJavaFiles = sketchScan.getJavaFiles();
+        sketchParameters.resourceDirectoryPath = sketchScan.getDataDirectory();
+        sketchParameters.reformatImportedSources = false;
+        sketchParameters.linkSketchResources = false;
+        sketchParameters.syncWithSketchDirectory = false;
+        sketchParameters.validateConvertedSources = validateConvertedSources;
+        sketchParameters.compileCheckClassPath = compileCheckClassPath;
+
+        return sketchParameters;
+    }
+
+    private int printReport(int sketchCount, @NotNull List<ImportSketchbook.SketchImportResult> results, long elapsedMillis) {
+        int converted = 0;
+
+        System.out.println();
+        System.out.println(String.format("%-40s %-8s %10s", "Sketch", "Result", "Time (ms)"));
+
+        for (ImportSketchbook.SketchImportResult result : results) {
+            System.out.println(String.format("%-40s %-8s %10d", result.getSketchName(), result.isSuccessful() ? "OK" : "FAILED", result.getElapsedMillis()));
+
+            if (result.isSuccessful()) {
+                converted++;
+            } else {
+                System.out.println("    " + result.getFailure().replace("\n", "\n    "));
+            }
+        }
+
+        System.out.println();
+        System.out.println("Converted " + converted + " of " + sketchCount + " sketches in " + elapsedMillis + " ms.");
+
+        return converted == sketchCount ? 0 : PARTIAL_FAILURE_EXIT_CODE;
+    }
+}
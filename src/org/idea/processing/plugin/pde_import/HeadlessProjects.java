@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.pde_import;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ex.ApplicationManagerEx;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ex.ProjectManagerEx;
+import com.intellij.openapi.util.ThrowableComputable;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+    Support for the application starters that run the import without a user interface.
+ */
+final class HeadlessProjects {
+
+    private static final Logger logger = com.intellij.openapi.diagnostic.Logger.getInstance(HeadlessProjects.class);
+
+    private HeadlessProjects() {}
+
+    /*
+        Run the command on a pooled thread, as the import writes on the event dispatch thread and must not be run from it, and
+        exit the application with the exit code returned by the command once it has completed.
+     */
+    static void runAndExit(@NotNull String commandName, @NotNull ThrowableComputable<Integer, Exception> command) {
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            int exitCode;
+
+            try {
+                exitCode = command.compute();
+            } catch (Throwable failure) {
+                logger.error("The command '" + commandName + "' failed.", failure);
+                System.err.println(commandName + " failed: " + failure);
+                exitCode = 1;
+            }
+
+            final int commandExitCode = exitCode;
+            ApplicationManager.getApplication().invokeLater(() -> {
+                ApplicationManagerEx.getApplicationEx().exit(true, true);
+                System.exit(commandExitCode);
+            }, ModalityState.NON_MODAL);
+        });
+    }
+
+    /*
+        Create and open a new project in the given directory. Must not be invoked on the event dispatch thread.
+     */
+    @NotNull
+    static Project openProject(@NotNull File projectDirectory, @NotNull String projectName) throws IOException {
+        if (! FileUtil.createDirectory(projectDirectory)) {
+            throw new IOException("Unable to create the project directory '" + projectDirectory + "'.");
+        }
+
+        Project project = ProjectManagerEx.getInstanceEx().newProject(projectName, projectDirectory.getPath(), true, false);
+
+        if (project == null) {
+            throw new IllegalStateException("Unable to create a project at '" + projectDirectory + "'.");
+        }
+
+        ApplicationManager.getApplication().invokeAndWait(() -> ProjectManagerEx.getInstanceEx().openProject(project), ModalityState.NON_MODAL);
+
+        return project;
+    }
+
+    /*
+        Save the documents and settings of the project to disk, and close it. Must not be invoked on the event dispatch thread.
+     */
+    static void saveAndClose(@NotNull Project project) {
+        ApplicationManager.getApplication().invokeAndWait(() -> {
+            FileDocumentManager.getInstance().saveAllDocuments();
+            project.save();
+            ProjectManagerEx.getInstanceEx().closeAndDispose(project);
+        }, ModalityState.NON_MODAL);
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.pde_import;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+    Durations, file counts, bytes processed and allocation estimates for each phase of a sketch import. Once the import has
+    completed, a summary is logged and a record of the import is appended, as a line of JSON, to the metrics file in the log
+    directory, so that imports can be compared over time.
+ */
+class ImportMetrics {
+
+    private static final Logger logger = com.intellij.openapi.diagnostic.Logger.getInstance(ImportMetrics.class);
+
+    private static final String METRICS_FILE_NAME = "processing-import-metrics.jsonl";
+
+    /* Imports of the sketches of a sketchbook complete concurrently, and append to the same file. */
+    private static final Object METRICS_FILE_LOCK = new Object();
+
+    enum Phase {
+        CACHE_LOOKUP("cache lookup"),
+        COPYING("copying"),
+        PARSING("parsing"),
+        ANALYSIS("analysis"),
+        IDENTIFICATION("identification"),
+        MIGRATION("migration"),
+        VALIDATION("validation"),
+        WRITING("writing"),
+        RESOURCES("resources"),
+        REFORMATTING("reformatting");
+
+        private final String description;
+
+        Phase(@NotNull String description) {
+            this.description = description;
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+
+    private final String sketchName;
+    private final long startNanos = System.nanoTime();
+
+    private final Map<Phase, PhaseTotals> phaseTotals = new EnumMap<>(Phase.class);
+
+    /* Sums over all phases, from which a measurement deducts the phases measured whilst it was running. */
+    private long recordedNanos;
+    private long recordedAllocatedBytes;
+
+    ImportMetrics(@NotNull String sketchName) {
+        this.sketchName = sketchName;
+    }
+
+    /*
+        Start measuring a phase. The time and allocations of other phases measured before the measurement is stopped, for
+        instance writes made on the event dispatch thread between parsed batches, are not counted towards it.
+
+        Allocations are estimated from the bytes allocated by all threads, and so include any other work done concurrently.
+     */
+    @NotNull
+    Measurement start(@NotNull Phase phase) {
+        synchronized (this) {
+            return new Measurement(phase, recordedNanos, recordedAllocatedBytes);
+        }
+    }
+
+    /*
+        Log a summary of the import, and append a record of it to the metrics file. Returns the summary.
+     */
+    @NotNull
+    String publish() {
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        StringJoiner phaseSummaries = new StringJoiner(", ");
+        JsonArray phaseRecords = new JsonArray();
+
+        synchronized (this) {
+            for (Map.Entry<Phase, PhaseTotals> phaseTotal : phaseTotals.entrySet()) {
+                PhaseTotals totals = phaseTotal.getValue();
+
+                phaseSummaries.add(phaseTotal.getKey() + " " + toMillis(totals.nanos) + "ms");
+
+                JsonObject phaseRecord = new JsonObject();
+                phaseRecord.addProperty("phase", phaseTotal.getKey().name().toLowerCase());
+                phaseRecord.addProperty("millis", toMillis(totals.nanos));
+                phaseRecord.addProperty("files", totals.files);
+                phaseRecord.addProperty("bytes", totals.bytes);
+                phaseRecord.addProperty("allocatedBytes", totals.allocatedBytes);
+                phaseRecords.add(phaseRecord);
+            }
+        }
+
+        String summary = "Imported '" + sketchName + "' in " + toMillis(elapsedNanos) + "ms: " + phaseSummaries + ".";
+        logger.info(summary);
+
+        JsonObject importRecord = new JsonObject();
+        importRecord.addProperty("timestamp", System.currentTimeMillis());
+        importRecord.addProperty("sketch", sketchName);
+        importRecord.addProperty("converterVersion", PdeConverter.CONVERTER_VERSION);
+        importRecord.addProperty("millis", toMillis(elapsedNanos));
+        importRecord.add("phases", phaseRecords);
+
+        appendRecord(importRecord.toString());
+
+        return summary;
+    }
+
+    private synchronized void record(@NotNull Phase phase, int files, long bytes, long nanos, long allocatedBytes) {
+        PhaseTotals totals = phaseTotals.computeIfAbsent(phase, p -> new PhaseTotals());
+        totals.files += files;
+        totals.bytes += bytes;
+        totals.nanos += nanos;
+        totals.allocatedBytes += allocatedBytes;
+
+        recordedNanos += nanos;
+        recordedAllocatedBytes += allocatedBytes;
+    }
+
+    private static void appendRecord(@NotNull String record) {
+        File metricsFile = new File(PathManager.getLogPath(), METRICS_FILE_NAME);
+
+        synchronized (METRICS_FILE_LOCK) {
+            FileUtil.createParentDirs(metricsFile);
+
+            try (Writer metricsWriter = new OutputStreamWriter(new FileOutputStream(metricsFile, true), StandardCharsets.UTF_8)) {
+                metricsWriter.write(record);
+                metricsWriter.write('\n');
+            } catch (IOException io) {
+                logger.warn("Unable to append the import metrics to '" + metricsFile + "'.", io);
+            }
+        }
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos / 1_000_000;
+    }
+
+    /*
+        Bytes allocated so far by all live threads, or -1 where the virtual machine does not report allocations.
+     */
+    static long totalAllocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        if (! (threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+
+        long totalAllocated = 0;
+
+        for (long allocated : ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (allocated > 0) {
+                totalAllocated += allocated;
+            }
+        }
+
+        return totalAllocated;
+    }
+
+    class Measurement {
+        private final Phase phase;
+        private final long startNanos = System.nanoTime();
+        private final long startAllocatedBytes = totalAllocatedBytes();
+        private final long startRecordedNanos;
+        private final long startRecordedAllocatedBytes;
+
+        private Measurement(@NotNull Phase phase, long startRecordedNanos, long startRecordedAllocatedBytes) {
+            this.phase = phase;
+            this.startRecordedNanos = startRecordedNanos;
+            this.startRecordedAllocatedBytes = startRecordedAllocatedBytes;
+        }
+
+        void stop(int files, long bytes) {
+            long elapsedNanos = System.nanoTime() - startNanos;
+            long allocatedBytes = startAllocatedBytes < 0 ? 0 : totalAllocatedBytes() - startAllocatedBytes;
+
+            synchronized (ImportMetrics.this) {
+                elapsedNanos -= recordedNanos - startRecordedNanos;
+                allocatedBytes -= recordedAllocatedBytes - startRecordedAllocatedBytes;
+            }
+
+            record(phase, files, bytes, Math.max(0, elapsedNanos), Math.max(0, allocatedBytes));
+        }
+    }
+
+    private static class PhaseTotals {
+        private int files;
+        private long bytes;
+        private long nanos;
+        private long allocatedBytes;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.pde_import;
+
+import com.intellij.notification.NotificationGroup;
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+    Balloon notifications raised by the sketch import, for outcomes the user should know about once the import has finished.
+ */
+public enum ImportNotifications {
+
+    INSTANCE;
+
+    private final NotificationGroup notificationGroup = NotificationGroup.balloonGroup("Processing Import");
+
+    public void info(@Nullable Project project, @NotNull String title, @NotNull String content) {
+        notify(project, title, content, NotificationType.INFORMATION);
+    }
+
+    public void warn(@Nullable Project project, @NotNull String title, @NotNull String content) {
+        notify(project, title, content, NotificationType.WARNING);
+    }
+
+    public void error(@Nullable Project project, @NotNull String title, @NotNull String content) {
+        notify(project, title, content, NotificationType.ERROR);
+    }
+
+    private void notify(@Nullable Project project, @NotNull String title, @NotNull String content, @NotNull NotificationType type) {
+        notificationGroup.createNotification(title, content, type, null).notify(project);
+    }
+}
@@ -18,124 +18,824 @@
 
 package org.idea.processing.plugin.pde_import;
 
+import com.intellij.codeInsight.actions.ReformatCodeProcessor;
 import com.intellij.ide.util.PackageUtil;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.roots.OrderEnumerator;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.*;
-import com.intellij.psi.util.PsiTreeUtil;
-import org.jetbrains.annotations.NotNull;
+import com.intellij.util.PathUtil;
 import org.idea.processing.plugin.project_creation.RunnableActionUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
-public class ImportSketchClasses implements Runnable {
+public class ImportSketchClasses extends Task.Backgroundable {
 
     private final Logger logger = com.intellij.openapi.diagnostic.Logger.getInstance(ImportSketchClasses.class);
 
-    private final String DEFAULT_SKETCH_PACKAGE_STATEMENT = "com.processing.sketch";
+    static final String DEFAULT_SKETCH_PACKAGE_STATEMENT = "com.processing.sketch";
 
     private ProcessingImportBuilder importBuilder;
+    private ProcessingImportBuilder.Parameters importParameters;
     private Collection<VirtualFile> importablePdeFiles;
+    private Collection<VirtualFile> importableJavaFiles;
     private List<Module> modules;
-    private Project project;
+    private VirtualFile sketchResourcesRoot;
+
+    /* Batches written during this import are grouped into a single undoable command. */
+    private final String importCommandGroupId = UUID.randomUUID().toString();
+    private final List<VirtualFile> writtenSourceFiles = new LinkedList<>();
+
+    private int filesParsed;
+    private int filesWritten;
+
+    private final ImportMetrics importMetrics;
+    private boolean showImportSummary = true;
+
+    private VirtualFile projectResourceDirectory;
+    private boolean literalDataExtracted;
+
+    /*
+        Where the converted sources are checked by compiling them, they are held here, by tab name, until all of them have
+        been converted, rather than written batch by batch.
+     */
+    private Map<String, String> uncheckedSketchTexts;
+
+    /*
+        Likewise, the literal data extracted from the tabs, by tab name, is held until the converted sources have been
+        checked, so that a sketch which fails the check leaves the resources of the module as they were.
+     */
+    private Map<String, List<LiteralDataExtraction.ExtractedLiteral>> uncheckedExtractedLiterals;
 
-    public ImportSketchClasses(ProcessingImportBuilder importBuilder,
+    /* Qualified names imported by the tabs of the sketch, resolved against the contributed libraries of the sketchbook. */
+    private final Set<String> importedNames = new HashSet<>();
+    private Collection<ContributedLibraryIndex.ContributedLibrary> contributedLibraries = Collections.emptyList();
+
+    /*
+        The import builder, if given, is cleaned up once the import has completed.
+     */
+    public ImportSketchClasses(@Nullable ProcessingImportBuilder importBuilder,
                                Project project,
                                List<Module> modules,
-                               Collection<VirtualFile> importablePdeFiles) {
-        this.project = project;
+                               ProcessingImportBuilder.Parameters importParameters) {
+        super(project, "Importing Processing Sketch", true);
         this.modules = modules;
         this.importBuilder = importBuilder;
-        this.importablePdeFiles = importablePdeFiles;
+        this.importParameters = importParameters;
+        this.importablePdeFiles = new LinkedList<>(importParameters.importablePdeFiles);
+        this.importableJavaFiles = importParameters.importableJavaFiles == null ? Collections.emptyList() : new LinkedList<>(importParameters.importableJavaFiles);
+        this.sketchResourcesRoot = importParameters.resourceDirectoryPath;
+        this.importMetrics = new ImportMetrics(getSketchName());
+    }
+
+    /*
+        Whether a notification summarising the duration of each phase is shown once the import has completed. The metrics of
+        the import are recorded either way.
+     */
+    void setShowImportSummary(boolean showImportSummary) {
+        this.showImportSummary = showImportSummary;
     }
 
+    /*
+        Imports the sketch as a pipeline of stages: read, preprocess, parse, analyse, identify and write. PDE files are streamed
+        through the pipeline in bounded batches; each batch is written to the project and released before the next batch is
+        parsed. Only the short-list of potential main sketch files is retained until all batches have been processed.
+
+        Preprocessing, parsing and identification run on the background thread of this task. Only writing the converted files
+        to the project is done on the event dispatch thread, in a write command for each batch.
+     */
     @Override
-    public void run() {
-        PsiElementFactory javaElementFactory = JavaPsiFacade.getElementFactory(project);
+    public void run(@NotNull ProgressIndicator indicator) {
+        indicator.setIndeterminate(false);
+
+        try {
+            importSketch(indicator);
+        } catch (ProcessCanceledException pce) {
+            logger.info("Import of the sketch was cancelled after writing " + filesWritten + " of " + importablePdeFiles.size() + " sketch files.");
+            throw pce;
+        } finally {
+            if (importBuilder != null) {
+                importBuilder.cleanup();
+            }
+        }
+    }
+
+    private void importSketch(@NotNull ProgressIndicator indicator) {
+        PsiElementFactory javaElementFactory = JavaPsiFacade.getElementFactory(myProject);
+
+        PsiDirectory defaultSketchPackage = ApplicationManager.getApplication().runReadAction(
+                (Computable<PsiDirectory>) () -> findDefaultSketchPackage(modules, DEFAULT_SKETCH_PACKAGE_STATEMENT));
+
+        if (defaultSketchPackage == null) {
+            throw new IllegalStateException("Unable to find default sketch sources package for writing converted PDE files to.");
+        }
+
+        if (importParameters.validateConvertedSources) {
+            uncheckedSketchTexts = new LinkedHashMap<>();
+            uncheckedExtractedLiterals = new LinkedHashMap<>();
+        }
+
+        final Collection<SketchFileAnalysis> mainSketchClassShortlist = new LinkedList<>();
+
+        // Short-listed tabs read from the conversion cache are held as Java text, by tab name, and are not parsed.
+        final Map<String, String> cachedMainSketchClassShortlist = new LinkedHashMap<>();
+
+        final SketchReferenceGraph referenceGraph = new SketchReferenceGraph();
+
+        indicator.setText("Copying Java tabs");
+
+        copyJavaTabs(defaultSketchPackage, referenceGraph, indicator);
+
+        indicator.setText("Reading previously converted PDE files");
+
+        final Map<String, String> conversionCacheKeys = new HashMap<>();
+        Collection<VirtualFile> unconvertedPdeFiles = readSketchTabs(defaultSketchPackage, cachedMainSketchClassShortlist, referenceGraph, conversionCacheKeys, indicator);
 
         PdeConverter converter = new PdeConverter();
-        Collection<PsiFile> parsedPdeFiles = new LinkedList<>();
+
+        indicator.setText("Converting PDE files");
+
+        long unconvertedPdeBytes = 0;
+
+        for (VirtualFile unconvertedPdeFile : unconvertedPdeFiles) {
+            unconvertedPdeBytes += unconvertedPdeFile.getLength();
+        }
+
+        // Analysis, identification and writing of each parsed batch are measured as phases of their own.
+        ImportMetrics.Measurement parsing = importMetrics.start(ImportMetrics.Phase.PARSING);
 
         try {
-            parsedPdeFiles = converter.parseAll(project, importablePdeFiles);
+            converter.parseInBatches(myProject, unconvertedPdeFiles, PdeConverter.DEFAULT_BATCH_SIZE, indicator, parsedPdeFiles -> {
+                filesParsed += parsedPdeFiles.size();
+                updateProgress(indicator);
+
+                ImportMetrics.Measurement analysis = importMetrics.start(ImportMetrics.Phase.ANALYSIS);
+
+                Collection<SketchFileAnalysis> analysedPdeFiles = new LinkedList<>();
+
+                for (PsiFile parsedPdeFile : parsedPdeFiles) {
+                    SketchFileAnalysis analysedPdeFile = ApplicationManager.getApplication().runReadAction(
+                            (Computable<SketchFileAnalysis>) () -> SketchFileAnalysis.analyze(parsedPdeFile));
+
+                    referenceGraph.addTab(analysedPdeFile);
+                    analysedPdeFiles.add(analysedPdeFile);
+
+                    String conversionCacheKey = conversionCacheKeys.get(parsedPdeFile.getName());
+                    List<LiteralDataExtraction.ExtractedLiteral> extractedLiterals = LiteralDataExtraction.getExtractedLiterals(parsedPdeFile);
+
+                    if (! extractedLiterals.isEmpty()) {
+                        writeExtractedLiterals(parsedPdeFile.getName(), extractedLiterals);
+                    } else if (conversionCacheKey != null) {
+                        // The cache holds only the converted text, so tabs from which literal data was extracted are not cached.
+                        PdeConversionCache.getInstance().put(conversionCacheKey, ApplicationManager.getApplication().runReadAction(
+                                (Computable<PdeConversionCache.CachedConversion>) () -> PdeConversionCache.CachedConversion.of(analysedPdeFile)));
+                    }
+                }
+
+                analysis.stop(parsedPdeFiles.size(), 0);
+
+                ImportMetrics.Measurement identification = importMetrics.start(ImportMetrics.Phase.IDENTIFICATION);
+
+                Collection<SketchFileAnalysis> batchShortlist = MigrationActions.firstStageMainSketchIdentification(analysedPdeFiles);
+                mainSketchClassShortlist.addAll(batchShortlist);
+
+                identification.stop(analysedPdeFiles.size(), 0);
+
+                Collection<SketchFileAnalysis> importableSketchFiles = new LinkedList<>(analysedPdeFiles);
+                importableSketchFiles.removeAll(batchShortlist);
+
+                logger.debug("Parsed a batch of " + parsedPdeFiles.size() + " PDE files, of which " + batchShortlist.size() + " may be the main sketch file.");
+
+                writeSketchFiles(defaultSketchPackage, importableSketchFiles, Collections.emptyMap(), indicator);
+            });
         } catch (InterruptedException ie) {
-            logger.warn("Thread interrupted whilst parsing importable PDE files", ie);
+            // A partially parsed sketch is not to be completed as though it had been imported.
+            Thread.currentThread().interrupt();
+            throw new ProcessCanceledException(ie);
         }
 
-        Collection<PsiFile> mainSketchClassShortlist = MigrationActions.firstStageMainSketchIdentification(parsedPdeFiles);
+        parsing.stop(unconvertedPdeFiles.size(), unconvertedPdeBytes);
+
+        if (literalDataExtracted) {
+            writeSketchDataLoader(defaultSketchPackage, indicator);
+        }
 
-        Map<Pair<PsiFile, PsiClass>, PsiImportList> mainSketchClasses = finalizeMainSketchClass(mainSketchClassShortlist, javaElementFactory);
+        indicator.checkCanceled();
+        indicator.setText("Identifying the main sketch class");
 
-        logger.info("Identified a total of " + mainSketchClasses.size() + " main sketch classes.");
+        MainSketchCandidate selectedMainSketchCandidate = finalizeMainSketchClass(mainSketchClassShortlist, cachedMainSketchClassShortlist, referenceGraph);
 
-        final Collection<PsiFile> importableSketchFiles = new HashSet<>(parsedPdeFiles);
+        final Collection<SketchFileAnalysis> importableSketchFiles = new LinkedList<>(mainSketchClassShortlist);
 
         /*
         if (generateSketchClass) {
             ImportDialogs.NO_MAIN_SKETCH_CLASS.getDialog().show();
         }*/
 
-        PsiFile selectedMainSketchFile;
-        PsiClass selectedMainSketchClass;
-        PsiImportList correspondingImportList;
+        if (selectedMainSketchCandidate != null) {
+            logger.info("Selected '" + selectedMainSketchCandidate + "' as the main sketch file.");
+
+            ImportMetrics.Measurement migration = importMetrics.start(ImportMetrics.Phase.MIGRATION);
+
+            // Only the selected main sketch file is parsed into a class.
+            SketchFileAnalysis postProcessedMainSketchFile = ApplicationManager.getApplication().runReadAction(
+                    (Computable<SketchFileAnalysis>) () -> {
+                        // A candidate read from the conversion cache is parsed only now that it has been selected.
+                        PsiImportList correspondingImportList = selectedMainSketchCandidate.parse(myProject).getImportList();
+
+                        if (correspondingImportList == null) {
+                            throw new IllegalStateException("The import list corresponding to the selected main sketch class is null.");
+                        }
 
-        // At this point, a short-list of potential main classes has been established. Select one for the purposes of import.
-        Iterator<Map.Entry<Pair<PsiFile, PsiClass>, PsiImportList>> classesIterator = mainSketchClasses.entrySet().iterator();
+                        PsiClass selectedMainSketchClass = selectedMainSketchCandidate.createSketchClass(javaElementFactory);
 
-        Map.Entry<Pair<PsiFile, PsiClass>, PsiImportList> entry = classesIterator.next();
+                        return SketchFileAnalysis.analyze(
+                                MigrationActions.postProcessSelectedMainSketchClass(myProject, selectedMainSketchClass, correspondingImportList));
+                    });
 
-        selectedMainSketchFile = entry.getKey().getFirst();
-        selectedMainSketchClass = entry.getKey().getSecond();
-        correspondingImportList = entry.getValue();
+            importableSketchFiles.remove(selectedMainSketchCandidate.getAnalysis());
+            cachedMainSketchClassShortlist.remove(selectedMainSketchCandidate.getName());
+            importableSketchFiles.add(postProcessedMainSketchFile);
 
-        if (selectedMainSketchFile == null || selectedMainSketchClass == null || correspondingImportList == null) {
-            throw new IllegalStateException("The selected main sketch class is null, or the corresponding import list to the class is null.");
+            migration.stop(1, 0);
+        } else {
+            logger.warn("No main sketch class could be identified amongst " + (mainSketchClassShortlist.size() + cachedMainSketchClassShortlist.size())
+                    + " short-listed files.");
         }
 
-        PsiFile postProcessedMainSketchFile = MigrationActions.postProcessSelectedMainSketchClass(project, selectedMainSketchClass, correspondingImportList);
+        indicator.setText("Converting PDE files");
 
-        importableSketchFiles.remove(selectedMainSketchFile);
-        importableSketchFiles.add(postProcessedMainSketchFile);
+        writeSketchFiles(defaultSketchPackage, importableSketchFiles, cachedMainSketchClassShortlist, indicator);
 
-        // Write all of the imported sketch files to disk.
-        final VirtualFile sketchResourcesRoot = importBuilder.getParameters().resourceDirectoryPath;
+        // Resolved before the sources are checked, so that the libraries are on the class path they are compiled against.
+        resolveContributedLibraries(indicator);
+
+        // Nothing that changes the project is done for a sketch that fails the check.
+        if (uncheckedSketchTexts != null) {
+            checkAndWriteSketchTexts(defaultSketchPackage, indicator);
+            writeCheckedExtractedLiterals();
+        }
+
+        attachContributedLibraries();
+
+        indicator.checkCanceled();
+        indicator.setText("Importing sketch resources");
+        indicator.setText2("");
 
         logger.info("Preparing to import sketch resources from '" + sketchResourcesRoot + "'.");
 
-        RunnableActionUtils.runWhenInitialized(project, () -> {
+        if (sketchResourcesRoot != null) {
+            VirtualFile projectResourceDirectory = findProjectResourceDirectory();
 
-            PsiDirectory defaultSketchPackage = findDefaultSketchPackage(modules, DEFAULT_SKETCH_PACKAGE_STATEMENT);
+            ImportMetrics.Measurement resources = importMetrics.start(ImportMetrics.Phase.RESOURCES);
+
+            ImportSketchResources sketchResources = new ImportSketchResources(myProject, sketchResourcesRoot, projectResourceDirectory, importParameters.linkSketchResources);
+            sketchResources.run(indicator);
+
+            resources.stop(sketchResources.getResourceCount(), sketchResources.getResourceBytes());
+        }
 
-            if (defaultSketchPackage == null) {
-                throw new IllegalStateException("Unable to find default sketch sources package for writing converted PDE files to.");
+        if (importParameters.reformatImportedSources) {
+            // The import is reported once the reformatting, which completes after this task, has been measured.
+            reformatWrittenSources(this::publishImportMetrics);
+        } else {
+            publishImportMetrics();
+        }
+
+        if (importParameters.syncWithSketchDirectory && ! modules.isEmpty()) {
+            String mainSketchTabName = selectedMainSketchCandidate == null ? null : selectedMainSketchCandidate.getName();
+
+            SketchSyncManager.getInstance(myProject).watch(modules.get(0), importParameters.root, importablePdeFiles, mainSketchTabName);
+        }
+    }
+
+    /*
+        Write the Java tabs of the sketch to the sketch package as they are, other than for their package statement, without
+        building any PSI for them.
+     */
+    private void copyJavaTabs(@NotNull PsiDirectory sketchPackage, @NotNull SketchReferenceGraph referenceGraph, @NotNull ProgressIndicator indicator) {
+        if (importableJavaFiles.isEmpty()) {
+            return;
+        }
+
+        ImportMetrics.Measurement copying = importMetrics.start(ImportMetrics.Phase.COPYING);
+        long javaBytesCopied = 0;
+
+        Map<String, String> javaTabTexts = new LinkedHashMap<>();
+
+        for (VirtualFile javaFile : importableJavaFiles) {
+            indicator.checkCanceled();
+
+            try {
+                byte[] javaContents = javaFile.contentsToByteArray();
+                String javaText = new String(javaContents, javaFile.getCharset());
+                SketchTokenScan tokenScan = SketchTokenScan.scan(javaText);
+
+                referenceGraph.addTab(javaFile.getNameWithoutExtension(), tokenScan.getDeclaredTypeNames(), tokenScan.getReferencedTypeNames());
+                javaTabTexts.put(javaFile.getNameWithoutExtension(), javaText);
+
+                javaBytesCopied += javaContents.length;
+            } catch (IOException io) {
+                logger.warn("Unable to read the Java tab '" + javaFile.getPath() + "'. It will not be imported.", io);
+            }
+
+            filesParsed++;
+
+            if (javaTabTexts.size() >= PdeConverter.DEFAULT_BATCH_SIZE) {
+                writeSketchFiles(sketchPackage, Collections.emptyList(), javaTabTexts, indicator);
+                javaTabTexts = new LinkedHashMap<>();
             }
+        }
+
+        writeSketchFiles(sketchPackage, Collections.emptyList(), javaTabTexts, indicator);
+
+        copying.stop(importableJavaFiles.size(), javaBytesCopied);
+    }
 
-            // @TODO Convert Processing cast methods to native casts and add an 'f' suffix at the end of float value declarations.
-            for (PsiFile sketchFile : importableSketchFiles) {
-                migrateColorToIntegerType(sketchFile, javaElementFactory);
+    /*
+        Read each of the PDE files of the sketch, and write those that need no conversion by the parser:
+
+        - tabs converted by an earlier import, found in the conversion cache, are written as they were converted; cached tabs
+          that may be the main sketch tab are short-listed by their cached Java text, without being parsed;
+        - tabs that declare only types are valid Java once preprocessed, and are written without being parsed.
+
+        Returns the PDE files that are yet to be converted, recording the cache key of each in the given map, by tab name, so
+        that their conversions can be cached.
+     */
+    @NotNull
+    private Collection<VirtualFile> readSketchTabs(@NotNull PsiDirectory sketchPackage,
+                                                          @NotNull Map<String, String> cachedMainSketchClassShortlist,
+                                                          @NotNull SketchReferenceGraph referenceGraph,
+                                                          @NotNull Map<String, String> conversionCacheKeys,
+                                                          @NotNull ProgressIndicator indicator) {
+        ImportMetrics.Measurement cacheLookup = importMetrics.start(ImportMetrics.Phase.CACHE_LOOKUP);
+        long pdeBytesRead = 0;
+
+        PdeConversionCache conversionCache = PdeConversionCache.getInstance();
+
+        Collection<VirtualFile> unconvertedPdeFiles = new LinkedList<>();
+        Map<String, String> convertedSketchTexts = new LinkedHashMap<>();
+        int typesOnlyTabCount = 0;
+
+        for (VirtualFile pdeFile : importablePdeFiles) {
+            indicator.checkCanceled();
+
+            String tabName = pdeFile.getNameWithoutExtension();
+            String conversionCacheKey;
+            byte[] pdeContents;
+
+            try {
+                pdeContents = pdeFile.contentsToByteArray();
+                pdeBytesRead += pdeContents.length;
+                conversionCacheKey = PdeConversionCache.key(pdeContents);
+            } catch (IOException io) {
+                logger.warn("Unable to read '" + pdeFile.getPath() + "' to look up its conversion.", io);
+                unconvertedPdeFiles.add(pdeFile);
+                continue;
             }
 
-            ApplicationManager.getApplication().runWriteAction(new ImportedSketchClassWriter(project, defaultSketchPackage, importableSketchFiles));
-            ApplicationManager.getApplication().runWriteAction(new ImportSketchResources(project, sketchResourcesRoot));
+            PdeConversionCache.CachedConversion cachedConversion = conversionCache.get(conversionCacheKey);
+
+            if (cachedConversion != null) {
+                referenceGraph.addTab(tabName, cachedConversion.getDeclaredTypeNames(), cachedConversion.getReferencedTypeNames());
+
+                if (cachedConversion.hasTopLevelError()) {
+                    cachedMainSketchClassShortlist.put(tabName, cachedConversion.getJavaText());
+                } else {
+                    convertedSketchTexts.put(tabName, cachedConversion.getJavaText());
+                }
+            } else {
+                String typesOnlyText = convertTypesOnlyTab(tabName, pdeContents, referenceGraph);
+
+                if (typesOnlyText == null) {
+                    conversionCacheKeys.put(tabName, conversionCacheKey);
+                    unconvertedPdeFiles.add(pdeFile);
+                    continue;
+                }
+
+                convertedSketchTexts.put(tabName, typesOnlyText);
+                typesOnlyTabCount++;
+            }
+
+            filesParsed++;
+
+            if (convertedSketchTexts.size() >= PdeConverter.DEFAULT_BATCH_SIZE) {
+                writeSketchFiles(sketchPackage, Collections.emptyList(), convertedSketchTexts, indicator);
+                convertedSketchTexts = new LinkedHashMap<>();
+            }
+        }
+
+        writeSketchFiles(sketchPackage, Collections.emptyList(), convertedSketchTexts, indicator);
+
+        cacheLookup.stop(importablePdeFiles.size(), pdeBytesRead);
+
+        logger.info((importablePdeFiles.size() - unconvertedPdeFiles.size() - typesOnlyTabCount) + " of " + importablePdeFiles.size()
+                + " PDE files were converted by an earlier import, and " + typesOnlyTabCount + " declare only types.");
+
+        return unconvertedPdeFiles;
+    }
+
+    /*
+        Preprocess a tab, and return its text if it declares only types, in which case it is valid Java without any further
+        conversion. Returns null for tabs that must be converted by the parser.
+     */
+    @Nullable
+    private String convertTypesOnlyTab(@NotNull String tabName, @NotNull byte[] pdeContents, @NotNull SketchReferenceGraph referenceGraph) {
+        ImportMetrics.Measurement copying = importMetrics.start(ImportMetrics.Phase.COPYING);
+
+        String javaText = PdePreprocessor.preprocess(new String(pdeContents, StandardCharsets.UTF_8));
+        SketchTokenScan tokenScan = SketchTokenScan.scan(javaText);
+
+        if (! tokenScan.declaresTypesOnly()) {
+            copying.stop(0, 0);
+            return null;
+        }
+
+        LiteralDataExtraction literalDataExtraction = LiteralDataExtraction.extract(tabName, javaText);
+
+        if (! literalDataExtraction.getExtractedLiterals().isEmpty()) {
+            writeExtractedLiterals(tabName, literalDataExtraction.getExtractedLiterals());
+        }
+
+        referenceGraph.addTab(tabName, tokenScan.getDeclaredTypeNames(), tokenScan.getReferencedTypeNames());
+
+        copying.stop(1, pdeContents.length);
+
+        return literalDataExtraction.getJavaText();
+    }
+
+    /*
+        Final stage of the import pipeline: write the given sketch files, and the given converted sketch texts, to the sketch
+        package. Processing syntax has already been rewritten by the preprocessor when the files were parsed.
+     */
+    private void writeSketchFiles(@NotNull PsiDirectory sketchPackage,
+                                  @NotNull Collection<SketchFileAnalysis> analysedSketchFiles,
+                                  @NotNull Map<String, String> convertedSketchTexts,
+                                  @NotNull ProgressIndicator indicator) {
+        if (analysedSketchFiles.isEmpty() && convertedSketchTexts.isEmpty()) {
+            return;
+        }
+
+        for (SketchFileAnalysis analysedSketchFile : analysedSketchFiles) {
+            importedNames.addAll(analysedSketchFile.getImportedNames());
+        }
+
+        for (String convertedSketchText : convertedSketchTexts.values()) {
+            importedNames.addAll(SketchTokenScan.scanImportedNames(convertedSketchText));
+        }
+
+        if (uncheckedSketchTexts != null) {
+            holdUncheckedSketchTexts(analysedSketchFiles, convertedSketchTexts);
+            return;
+        }
+
+        writeSketchBatch(sketchPackage, analysedSketchFiles, convertedSketchTexts, indicator);
+    }
+
+    private void writeSketchBatch(@NotNull PsiDirectory sketchPackage,
+                                  @NotNull Collection<SketchFileAnalysis> analysedSketchFiles,
+                                  @NotNull Map<String, String> convertedSketchTexts,
+                                  @NotNull ProgressIndicator indicator) {
+        Collection<PsiFile> sketchFiles = new ArrayList<>(analysedSketchFiles.size());
+
+        for (SketchFileAnalysis analysedSketchFile : analysedSketchFiles) {
+            sketchFiles.add(analysedSketchFile.getSketchFile());
+        }
+
+        indicator.checkCanceled();
+
+        ImportedSketchClassWriter sketchClassWriter = new ImportedSketchClassWriter(myProject, sketchPackage, sketchFiles, convertedSketchTexts, importCommandGroupId);
+
+        ApplicationManager.getApplication().invokeAndWait(() -> {
+            ImportMetrics.Measurement writing = importMetrics.start(ImportMetrics.Phase.WRITING);
+
+            long charactersWritten = 0;
+
+            for (PsiFile sketchFile : sketchFiles) {
+                charactersWritten += sketchFile.getTextLength();
+            }
+
+            for (String convertedSketchText : convertedSketchTexts.values()) {
+                charactersWritten += convertedSketchText.length();
+            }
+
+            sketchClassWriter.run();
+
+            writing.stop(sketchFiles.size() + convertedSketchTexts.size(), charactersWritten);
+        }, ModalityState.defaultModalityState());
+
+        writtenSourceFiles.addAll(sketchClassWriter.getWrittenFiles());
+
+        filesWritten += sketchFiles.size() + convertedSketchTexts.size();
+        updateProgress(indicator);
+    }
+
+    private void holdUncheckedSketchTexts(@NotNull Collection<SketchFileAnalysis> analysedSketchFiles, @NotNull Map<String, String> convertedSketchTexts) {
+        ApplicationManager.getApplication().runReadAction(() -> {
+            for (SketchFileAnalysis analysedSketchFile : analysedSketchFiles) {
+                PsiFile sketchFile = analysedSketchFile.getSketchFile();
+                uncheckedSketchTexts.put(FileUtil.getNameWithoutExtension(sketchFile.getName()), sketchFile.getText());
+            }
         });
 
-        importBuilder.cleanup();
+        uncheckedSketchTexts.putAll(convertedSketchTexts);
+    }
+
+    /*
+        Compile all of the converted sources of the sketch in memory, and write them to the sketch package only if they
+        compile. Where they do not, nothing is written, and the errors of each tab are raised in a CompileCheckFailedException.
+        Sources are written without being checked where no compiler, or no Processing library, is available to check them.
+     */
+    private void checkAndWriteSketchTexts(@NotNull PsiDirectory sketchPackage, @NotNull ProgressIndicator indicator) {
+        Map<String, String> sketchTexts = uncheckedSketchTexts;
+        uncheckedSketchTexts = null;
+
+        indicator.checkCanceled();
+        indicator.setText("Compiling converted sources");
+
+        // Without a module to take the class path from, the sources are written unchecked, as for an empty class path.
+        String classPath = importParameters.compileCheckClassPath != null ? importParameters.compileCheckClassPath :
+                modules.isEmpty() ? "" :
+                ApplicationManager.getApplication().runReadAction((Computable<String>) () -> OrderEnumerator.orderEntries(modules.get(0))
+                        .withoutSdk().withoutModuleSourceEntries().recursively().getPathsList().getPathsString());
+
+        // The contributed libraries are attached to the module only once the check has passed.
+        if (! classPath.isEmpty()) {
+            StringJoiner contributedClassPath = new StringJoiner(File.pathSeparator).add(classPath);
+
+            for (ContributedLibraryIndex.ContributedLibrary contributedLibrary : contributedLibraries) {
+                for (File libraryJar : contributedLibrary.getJars()) {
+                    contributedClassPath.add(libraryJar.getPath());
+                }
+            }
+
+            classPath = contributedClassPath.toString();
+        }
+
+        SketchCompileCheck compileCheck = classPath.isEmpty() ? null : SketchCompileCheck.create(classPath);
+
+        if (compileCheck == null) {
+            String reason = classPath.isEmpty() ? "no Processing library is attached to the module." : "the IDE does not run with a Java compiler.";
+
+            logger.warn("The converted sources of '" + getSketchName() + "' cannot be compiled, as " + reason);
+            ImportNotifications.INSTANCE.warn(myProject, "Converted sources not checked",
+                    "The sources of '" + getSketchName() + "' were imported without being compiled, as " + reason);
+        } else {
+            ImportMetrics.Measurement validation = importMetrics.start(ImportMetrics.Phase.VALIDATION);
+
+            String packageName = ApplicationManager.getApplication().runReadAction((Computable<String>) () -> {
+                PsiPackage sketchPsiPackage = JavaDirectoryService.getInstance().getPackage(sketchPackage);
+                return sketchPsiPackage == null ? "" : sketchPsiPackage.getQualifiedName();
+            });
+
+            Map<String, String> relocatedSketchTexts = new LinkedHashMap<>();
+            long charactersChecked = 0;
+
+            for (Map.Entry<String, String> sketchText : sketchTexts.entrySet()) {
+                relocatedSketchTexts.put(sketchText.getKey(), ImportedSketchClassWriter.relocate(sketchText.getValue(), packageName));
+                charactersChecked += sketchText.getValue().length();
+            }
+
+            Map<String, List<String>> errorsByTab = compileCheck.compile(packageName, relocatedSketchTexts);
+
+            validation.stop(sketchTexts.size(), charactersChecked);
+
+            if (! errorsByTab.isEmpty()) {
+                throw new SketchCompileCheck.CompileCheckFailedException(getSketchName(), errorsByTab);
+            }
+        }
+
+        indicator.setText("Writing converted sources");
+
+        Map<String, String> sketchTextBatch = new LinkedHashMap<>();
+
+        for (Map.Entry<String, String> sketchText : sketchTexts.entrySet()) {
+            sketchTextBatch.put(sketchText.getKey(), sketchText.getValue());
+
+            if (sketchTextBatch.size() >= PdeConverter.DEFAULT_BATCH_SIZE) {
+                writeSketchBatch(sketchPackage, Collections.emptyList(), sketchTextBatch, indicator);
+                sketchTextBatch = new LinkedHashMap<>();
+            }
+        }
+
+        if (! sketchTextBatch.isEmpty()) {
+            writeSketchBatch(sketchPackage, Collections.emptyList(), sketchTextBatch, indicator);
+        }
+    }
+
+    /*
+        Find the contributed libraries of the sketchbook that provide the names imported by the sketch.
+     */
+    private void resolveContributedLibraries(@NotNull ProgressIndicator indicator) {
+        if (importedNames.isEmpty() || modules.isEmpty()) {
+            return;
+        }
+
+        indicator.checkCanceled();
+        indicator.setText("Resolving contributed libraries");
+
+        contributedLibraries = ContributedLibraryIndex.forSketch(importParameters.root).resolve(importedNames);
+
+        if (! contributedLibraries.isEmpty()) {
+            logger.info("The sketch '" + getSketchName() + "' imports " + contributedLibraries.size() + " contributed libraries.");
+        }
+    }
+
+    /*
+        Attach the resolved contributed libraries to the modules of the sketch.
+     */
+    private void attachContributedLibraries() {
+        if (contributedLibraries.isEmpty() || modules.isEmpty()) {
+            return;
+        }
+
+        AttachContributedLibraries attachLibraries = new AttachContributedLibraries(myProject, modules, contributedLibraries);
+
+        ApplicationManager.getApplication().invokeAndWait(() ->
+                ApplicationManager.getApplication().runWriteAction(attachLibraries), ModalityState.defaultModalityState());
+    }
+
+    /*
+        Write the literal data extracted from a parsed tab to the resources directory of the module. The tab refers to the
+        data by the path of its resource, so the import cannot continue without it.
+     */
+    private void writeExtractedLiterals(@NotNull String tabName, @NotNull List<LiteralDataExtraction.ExtractedLiteral> extractedLiterals) {
+        literalDataExtracted = true;
+
+        if (uncheckedExtractedLiterals != null) {
+            uncheckedExtractedLiterals.put(tabName, extractedLiterals);
+            return;
+        }
+
+        ImportMetrics.Measurement extraction = importMetrics.start(ImportMetrics.Phase.RESOURCES);
+
+        File resourceRoot = VfsUtilCore.virtualToIoFile(findProjectResourceDirectory());
+        long bytesWritten = 0;
+
+        for (LiteralDataExtraction.ExtractedLiteral extractedLiteral : extractedLiterals) {
+            try {
+                extractedLiteral.writeTo(resourceRoot);
+                bytesWritten += extractedLiteral.getSize();
+            } catch (IOException io) {
+                throw new IllegalStateException("Unable to write the data extracted from '" + tabName + "' to the resource '"
+                        + extractedLiteral.getResourcePath() + "'.", io);
+            }
+        }
+
+        logger.info("Extracted " + extractedLiterals.size() + " oversized literals (" + StringUtil.formatFileSize(bytesWritten) + ") from '" + tabName + "'.");
+
+        extraction.stop(extractedLiterals.size(), bytesWritten);
+    }
+
+    /*
+        Write the class through which the sketch loads its extracted literal data, and make the extracted data visible to the
+        IDE.
+     */
+    private void writeSketchDataLoader(@NotNull PsiDirectory sketchPackage, @NotNull ProgressIndicator indicator) {
+        String loaderText;
+
+        try {
+            loaderText = LiteralDataExtraction.loaderText();
+        } catch (IOException io) {
+            throw new IllegalStateException("Unable to read the sketch data loader class.", io);
+        }
+
+        writeSketchFiles(sketchPackage, Collections.emptyList(), Collections.singletonMap(LiteralDataExtraction.LOADER_CLASS_NAME, loaderText), indicator);
+
+        // Held data is written, and made visible, once the converted sources have been checked.
+        if (uncheckedExtractedLiterals == null) {
+            VfsUtil.markDirtyAndRefresh(false, true, true, findProjectResourceDirectory());
+        }
+    }
+
+    /*
+        Write the literal data held whilst the converted sources were checked.
+     */
+    private void writeCheckedExtractedLiterals() {
+        Map<String, List<LiteralDataExtraction.ExtractedLiteral>> checkedExtractedLiterals = uncheckedExtractedLiterals;
+        uncheckedExtractedLiterals = null;
+
+        if (checkedExtractedLiterals.isEmpty()) {
+            return;
+        }
+
+        for (Map.Entry<String, List<LiteralDataExtraction.ExtractedLiteral>> tabLiterals : checkedExtractedLiterals.entrySet()) {
+            writeExtractedLiterals(tabLiterals.getKey(), tabLiterals.getValue());
+        }
+
+        VfsUtil.markDirtyAndRefresh(false, true, true, findProjectResourceDirectory());
     }
 
-    private void migrateColorToIntegerType(@NotNull PsiFile sketchFile, PsiElementFactory elementFactory) {
-        Collection<PsiTypeElement> typeElementsInFile = PsiTreeUtil.findChildrenOfType(sketchFile, PsiTypeElement.class);
+    @NotNull
+    private VirtualFile findProjectResourceDirectory() {
+        if (projectResourceDirectory == null) {
+            projectResourceDirectory = ImportSketchResources.findProjectResourceDirectory(findModuleContentRoot());
 
-        for (PsiTypeElement typeElement : typeElementsInFile) {
-            boolean isProcessingColorType = typeElement.getType().equalsToText("color");
-            if (isProcessingColorType) {
-                PsiTypeElement integerType = elementFactory.createTypeElementFromText("int", null);
-                typeElement.replace(integerType);
+            if (projectResourceDirectory == null) {
+                throw new IllegalStateException("Cannot find directory 'src/main/resources' into which sketch resources are to be copied. Sketch resources cannot be imported.");
             }
         }
+
+        return projectResourceDirectory;
+    }
+
+    /*
+        Reformat the written sources once the import has completed, in a background task of its own that may be cancelled
+        without affecting the import.
+     */
+    private void reformatWrittenSources(@NotNull Runnable onReformatted) {
+        ApplicationManager.getApplication().invokeLater(() -> {
+            ImportMetrics.Measurement reformatting = importMetrics.start(ImportMetrics.Phase.REFORMATTING);
+
+            PsiManager psiManager = PsiManager.getInstance(myProject);
+            List<PsiFile> reformattableFiles = new ArrayList<>(writtenSourceFiles.size());
+
+            for (VirtualFile writtenSourceFile : writtenSourceFiles) {
+                PsiFile reformattableFile = writtenSourceFile.isValid() ? psiManager.findFile(writtenSourceFile) : null;
+
+                if (reformattableFile != null) {
+                    reformattableFiles.add(reformattableFile);
+                }
+            }
+
+            if (reformattableFiles.isEmpty()) {
+                onReformatted.run();
+                return;
+            }
+
+            ReformatCodeProcessor reformatCodeProcessor = new ReformatCodeProcessor(myProject, reformattableFiles.toArray(PsiFile.EMPTY_ARRAY), null, false);
+            reformatCodeProcessor.setPostRunnable(() -> {
+                reformatting.stop(reformattableFiles.size(), 0);
+                onReformatted.run();
+            });
+            reformatCodeProcessor.run();
+        }, myProject.getDisposed());
+    }
+
+    /*
+        Invoked where the task is run by the progress manager, rather than as part of a sketchbook import.
+     */
+    @Override
+    public void onThrowable(@NotNull Throwable error) {
+        if (error instanceof SketchCompileCheck.CompileCheckFailedException) {
+            SketchCompileCheck.CompileCheckFailedException compileCheckFailure = (SketchCompileCheck.CompileCheckFailedException) error;
+
+            ImportNotifications.INSTANCE.error(myProject, "Sketch not imported", StringUtil.escapeXml(compileCheckFailure.getMessage())
+                    + "<br>" + StringUtil.escapeXml(compileCheckFailure.describeErrors()).replace("\n", "<br>"));
+            return;
+        }
+
+        super.onThrowable(error);
+    }
+
+    private void publishImportMetrics() {
+        String importSummary = importMetrics.publish();
+
+        if (showImportSummary) {
+            ImportNotifications.INSTANCE.info(myProject, "Sketch imported", importSummary);
+        }
+    }
+
+    private void updateProgress(@NotNull ProgressIndicator indicator) {
+        int totalFiles = Math.max(importablePdeFiles.size() + importableJavaFiles.size(), 1);
+
+        indicator.setFraction(Math.min(1.0, (filesParsed + filesWritten) / (2.0 * totalFiles)));
+        indicator.setText2(filesParsed + " parsed, " + filesWritten + " written of " + (importablePdeFiles.size() + importableJavaFiles.size()) + " files");
+    }
+
+    /*
+        The content root of the module the sketch is imported into, which in a sketchbook import differs from the project root.
+     */
+    @NotNull
+    private VirtualFile findModuleContentRoot() {
+        VirtualFile[] contentRoots = ApplicationManager.getApplication().runReadAction(
+                (Computable<VirtualFile[]>) () -> ModuleRootManager.getInstance(modules.get(0)).getContentRoots());
+
+        return contentRoots.length > 0 ? contentRoots[0] : myProject.getBaseDir();
+    }
+
+    @NotNull
+    String getSketchName() {
+        return PathUtil.getFileName(importParameters.root);
     }
 
     private PsiDirectory findDefaultSketchPackage(Collection<Module> modules, String packageFqn) {
@@ -153,42 +853,77 @@ public class ImportSketchClasses implements Runnable {
         return defaultSketchPackage;
     }
 
-    private Map<Pair<PsiFile, PsiClass>, PsiImportList> finalizeMainSketchClass(Collection<PsiFile> mainSketchClassShortlist,
-                                                                                PsiElementFactory javaElementFactory) {
-        Map<Pair<PsiFile, PsiClass>, PsiImportList> mainSketchClasses =
-                MigrationActions.secondStageMainSketchIdentification(mainSketchClassShortlist, javaElementFactory);
+    /*
+        Where more than one candidate declares a draw method, the candidate from which most of the sketch is reached is chosen.
+        The user is only asked to choose where candidates tie, and never in a headless import.
+     */
+    @Nullable
+    private MainSketchCandidate finalizeMainSketchClass(Collection<SketchFileAnalysis> mainSketchClassShortlist,
+                                                        @NotNull Map<String, String> cachedMainSketchClassShortlist,
+                                                        @NotNull SketchReferenceGraph referenceGraph) {
+        ImportMetrics.Measurement identification = importMetrics.start(ImportMetrics.Phase.IDENTIFICATION);
+
+        List<MainSketchCandidate> mainSketchCandidates = ApplicationManager.getApplication().runReadAction(
+                (Computable<List<MainSketchCandidate>>) () -> MigrationActions.secondStageMainSketchIdentification(mainSketchClassShortlist));
+        mainSketchCandidates.addAll(MigrationActions.secondStageMainSketchIdentification(cachedMainSketchClassShortlist));
+
+        identification.stop(mainSketchClassShortlist.size() + cachedMainSketchClassShortlist.size(), 0);
+
+        logger.info("Identified a total of " + mainSketchCandidates.size() + " main sketch classes.");
+
+        if (mainSketchCandidates.isEmpty()) {
+            return null;
+        }
+
+        if (mainSketchCandidates.size() == 1) {
+            return mainSketchCandidates.get(0);
+        }
+
+        // Any prompt for the main sketch class below is not counted towards the identification phase.
+        ImportMetrics.Measurement ranking = importMetrics.start(ImportMetrics.Phase.IDENTIFICATION);
+        MainSketchCandidate rankedMainSketchCandidate = referenceGraph.selectMainSketch(mainSketchCandidates, getSketchName());
+        ranking.stop(0, 0);
+
+        if (rankedMainSketchCandidate != null) {
+            logger.info("Selected '" + rankedMainSketchCandidate + "' as the main sketch class, as the rest of the sketch is reached from it.");
+            return rankedMainSketchCandidate;
+        }
 
-        if (mainSketchClasses.size() == 1 || mainSketchClasses.isEmpty()) {
-            return mainSketchClasses;
+        if (RunnableActionUtils.isNoBackgroundMode()) {
+            logger.warn("Unable to choose between " + mainSketchCandidates.size() + " equally ranked main sketch classes. Selecting '" + mainSketchCandidates.get(0) + "'.");
+            return mainSketchCandidates.get(0);
         }
 
+        return promptForMainSketchClass(mainSketchCandidates);
+    }
+
+    @NotNull
+    private MainSketchCandidate promptForMainSketchClass(List<MainSketchCandidate> mainSketchCandidates) {
         /*
-            To cater for an unusual scenario in which there is more than one sketch class that has a draw method.
+            To cater for an unusual scenario in which there is more than one sketch class that has a draw method, and the
+            candidates cannot be told apart by the tabs reached from them.
 
             This scenario should never arise, however, as Processing IDE doesn't allow multiple sketch classes to declare the draw() method.
-
-            Prompt the user to select a class that will be the main sketch class?
-            Perhaps a further heuristic can be applied prior to prompting the user to decide: how many of the other classes
-            are referenced from each of the "main" classes.
          */
-        MainSketchSelectListItem[] sketchSelectItems = new MainSketchSelectListItem[mainSketchClasses.entrySet().size()];
+        MainSketchSelectListItem[] sketchSelectItems = new MainSketchSelectListItem[mainSketchCandidates.size()];
 
         int idx = 0;
-        for (Map.Entry<Pair<PsiFile, PsiClass>, PsiImportList> pairPsiImportListEntry : mainSketchClasses.entrySet()) {
-            sketchSelectItems[idx] = new MainSketchSelectListItem(pairPsiImportListEntry);
+        for (MainSketchCandidate mainSketchCandidate : mainSketchCandidates) {
+            sketchSelectItems[idx] = new MainSketchSelectListItem(mainSketchCandidate);
             idx++;
         }
 
-        com.intellij.openapi.ui.ComboBox mainSketchSelector = new com.intellij.openapi.ui.ComboBox(sketchSelectItems);
+        final Ref<MainSketchSelectListItem> selectedClassForMain = Ref.create();
 
-        ImportDialogs.SELECT_MAIN_SKETCH_CLASS.getDialog(mainSketchSelector).show();
+        ApplicationManager.getApplication().invokeAndWait(() -> {
+            com.intellij.openapi.ui.ComboBox mainSketchSelector = new com.intellij.openapi.ui.ComboBox(sketchSelectItems);
 
-        MainSketchSelectListItem selectedClassForMain = (MainSketchSelectListItem) mainSketchSelector.getSelectedItem();
-        mainSketchClasses = new HashMap<>();
+            ImportDialogs.SELECT_MAIN_SKETCH_CLASS.getDialog(mainSketchSelector).show();
 
-        mainSketchClasses.put(selectedClassForMain.getEntry().getKey(), selectedClassForMain.getEntry().getValue());
+            selectedClassForMain.set((MainSketchSelectListItem) mainSketchSelector.getSelectedItem());
+        }, ModalityState.defaultModalityState());
 
-        return mainSketchClasses;
+        return selectedClassForMain.get().getCandidate();
     }
 
 }
@@ -20,53 +20,252 @@ package org.idea.processing.plugin.pde_import;
 
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-class ImportSketchResources implements Runnable {
+/**
+    Copies the contents of a sketch's data directory into the project resources directory. Files are copied with NIO in
+    parallel, off the event dispatch thread, and the VFS is refreshed once when all copies have completed. In link mode, files
+    are hard linked into the project where the file system supports it, and copied otherwise.
+ */
+class ImportSketchResources {
 
     private final Logger logger = com.intellij.openapi.diagnostic.Logger.getInstance(ImportSketchResources.class);
 
+    /*
+        Copying is bound by disk throughput rather than CPU, so a small number of threads is enough to keep the disk busy.
+     */
+    private static final int COPY_THREAD_COUNT = Math.min(4, Math.max(1, Runtime.getRuntime().availableProcessors()));
+
+    private static final long COPY_POLL_INTERVAL_MILLIS = 50;
+
     private final Project project;
     private final VirtualFile sketchDataDirectory;
+    private final VirtualFile projectResourceDirectory;
+    private final boolean linkResources;
+
+    private final AtomicLong bytesImported = new AtomicLong();
+    private final AtomicInteger filesLinked = new AtomicInteger();
+    private final List<String> failures = Collections.synchronizedList(new ArrayList<>());
 
-    public ImportSketchResources(@NotNull Project project, @Nullable VirtualFile sketchDataDirectory) {
+    private int resourceCount;
+    private long resourceBytes;
+
+    public ImportSketchResources(@NotNull Project project,
+                                 @Nullable VirtualFile sketchDataDirectory,
+                                 @NotNull VirtualFile projectResourceDirectory,
+                                 boolean linkResources) {
         this.project = project;
         this.sketchDataDirectory = sketchDataDirectory;
+        this.projectResourceDirectory = projectResourceDirectory;
+        this.linkResources = linkResources;
     }
 
-    @Override
-    public void run() {
+    /*
+        Import the sketch resources, returning the number of files that could not be imported. Must not be called on the
+        event dispatch thread.
+     */
+    public int run(@NotNull ProgressIndicator indicator) {
         if (sketchDataDirectory == null) {
-            return;
+            return 0;
         }
 
-        VirtualFile projectResourceDirectory = VfsUtil.findRelativeFile(project.getBaseDir(), "src", "main", "resources");
+        Path sourceRoot = VfsUtilCore.virtualToIoFile(sketchDataDirectory).toPath();
+        Path targetRoot = VfsUtilCore.virtualToIoFile(projectResourceDirectory).toPath();
 
-        if (projectResourceDirectory == null) {
-            throw new IllegalStateException("Cannot find directory 'src/main/resources' into which sketch resources are to be copied. Sketch resources cannot be imported.");
+        List<Path> resourceFiles = new ArrayList<>();
+        long totalBytes;
+
+        try {
+            totalBytes = collectResourceFiles(sourceRoot, targetRoot, resourceFiles);
+        } catch (IOException io) {
+            logger.warn("Cannot list the sketch resources at '" + sourceRoot + "'.", io);
+            failures.add(sourceRoot + ": " + io.getMessage());
+            reportOutcome(0, 0);
+            return failures.size();
         }
 
-        ApplicationManager.getApplication().runWriteAction(new Runnable() {
+        resourceCount = resourceFiles.size();
+        resourceBytes = totalBytes;
+
+        logger.info("Importing " + resourceFiles.size() + " sketch resources (" + StringUtil.formatFileSize(totalBytes) + ") from '"
+                + sourceRoot + "' into '" + targetRoot + "'" + (linkResources ? ", linking where supported." : "."));
+
+        long startTime = System.currentTimeMillis();
+
+        ExecutorService copyExecutor = Executors.newFixedThreadPool(COPY_THREAD_COUNT, runnable -> {
+            Thread copyThread = new Thread(runnable, "Processing Sketch Resource Copier");
+            copyThread.setDaemon(true);
+            return copyThread;
+        });
+
+        try {
+            List<Future<?>> copies = new ArrayList<>(resourceFiles.size());
+
+            for (Path resourceFile : resourceFiles) {
+                Path targetFile = targetRoot.resolve(sourceRoot.relativize(resourceFile).toString());
+                copies.add(copyExecutor.submit(() -> importResource(resourceFile, targetFile)));
+            }
+
+            awaitCopies(copies, totalBytes, indicator);
+        } finally {
+            copyExecutor.shutdownNow();
+
+            // Whatever was copied before a failure or cancellation is made visible to the IDE.
+            VfsUtil.markDirtyAndRefresh(false, true, true, projectResourceDirectory);
+        }
+
+        logger.info("Imported sketch resources in " + (System.currentTimeMillis() - startTime) + "ms. " + filesLinked.get()
+                + " linked, " + failures.size() + " failed.");
+
+        reportOutcome(resourceFiles.size(), totalBytes);
+
+        return failures.size();
+    }
+
+    /*
+        Number and total size of the sketch resources found by the last run.
+     */
+    public int getResourceCount() {
+        return resourceCount;
+    }
+
+    public long getResourceBytes() {
+        return resourceBytes;
+    }
+
+    /*
+        Collect the regular files below the source root, creating the matching directories below the target root. Returns the
+        total size of the collected files.
+     */
+    private long collectResourceFiles(@NotNull Path sourceRoot, @NotNull Path targetRoot, @NotNull List<Path> resourceFiles) throws IOException {
+        AtomicLong totalBytes = new AtomicLong();
+
+        Files.walkFileTree(sourceRoot, new SimpleFileVisitor<Path>() {
             @Override
-            public void run() {
-
-                for (VirtualFile resourceEntry : sketchDataDirectory.getChildren()) {
-                    try {
-                        logger.debug("Copying '" + resourceEntry.getPath() + "' into sketch project.");
-                        resourceEntry.copy(this, projectResourceDirectory, resourceEntry.getName());
-                        logger.debug("Copy of '" + resourceEntry.getPath() + "' succeeded.");
-                    } catch (IOException io) {
-                        // @TODO This failure is silent. Spawn a notification to inform the user.
-                        logger.error("Whilst importing sketch resources into project, encountered an exception.", io);
-                    }
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                Files.createDirectories(targetRoot.resolve(sourceRoot.relativize(directory).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile()) {
+                    resourceFiles.add(file);
+                    totalBytes.addAndGet(attributes.size());
                 }
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException io) {
+                logger.warn("Cannot read the sketch resource '" + file + "'.", io);
+                failures.add(file + ": " + io.getMessage());
+                return FileVisitResult.CONTINUE;
             }
         });
+
+        return totalBytes.get();
+    }
+
+    private void importResource(@NotNull Path source, @NotNull Path target) {
+        try {
+            if (linkResources && link(source, target)) {
+                filesLinked.incrementAndGet();
+            } else {
+                Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+
+            bytesImported.addAndGet(Files.size(target));
+        } catch (IOException io) {
+            logger.warn("Cannot import the sketch resource '" + source + "' to '" + target + "'.", io);
+            failures.add(source + ": " + io.getMessage());
+        }
+    }
+
+    /*
+        Hard link the target to the source. Returns false where links are unsupported, e.g. across file systems, so that the
+        caller can fall back to a copy.
+     */
+    private boolean link(@NotNull Path source, @NotNull Path target) {
+        try {
+            Files.deleteIfExists(target);
+            Files.createLink(target, source);
+            return true;
+        } catch (IOException | UnsupportedOperationException | SecurityException linkFailure) {
+            logger.debug("Cannot link '" + target + "' to '" + source + "', falling back to a copy: " + linkFailure.getMessage());
+            return false;
+        }
+    }
+
+    private void awaitCopies(@NotNull List<Future<?>> copies, long totalBytes, @NotNull ProgressIndicator indicator) {
+        for (Future<?> copy : copies) {
+            while (true) {
+                indicator.checkCanceled();
+
+                try {
+                    copy.get(COPY_POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException timeout) {
+                    updateProgress(totalBytes, indicator);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new ProcessCanceledException(interrupted);
+                } catch (ExecutionException execution) {
+                    logger.warn("Sketch resource import failed.", execution.getCause());
+                    failures.add(String.valueOf(execution.getCause()));
+                    break;
+                }
+            }
+
+            updateProgress(totalBytes, indicator);
+        }
+    }
+
+    /*
+        The indicator is that of the whole sketch import, whose fraction is measured in files, so only its details are updated.
+     */
+    private void updateProgress(long totalBytes, @NotNull ProgressIndicator indicator) {
+        long imported = bytesImported.get();
+
+        indicator.setText2(StringUtil.formatFileSize(imported) + " of " + StringUtil.formatFileSize(totalBytes));
+    }
+
+    private void reportOutcome(int resourceCount, long totalBytes) {
+        if (failures.isEmpty()) {
+            return;
+        }
+
+        String failureList = StringUtil.join(failures.subList(0, Math.min(failures.size(), 5)), "<br/>");
+
+        ImportNotifications.INSTANCE.warn(project, "Sketch resources partially imported",
+                failures.size() + " of " + resourceCount + " sketch resources (" + StringUtil.formatFileSize(totalBytes)
+                        + " in total) could not be imported into '" + projectResourceDirectory.getPath() + "':<br/>" + failureList);
+    }
+
+    /*
+        Resolves the directory into which resources are imported, 'src/main/resources' below the given content root.
+     */
+    @Nullable
+    static VirtualFile findProjectResourceDirectory(@NotNull VirtualFile contentRoot) {
+        return ApplicationManager.getApplication().runReadAction((Computable<VirtualFile>) () ->
+                VfsUtil.findRelativeFile(contentRoot, "src", "main", "resources"));
     }
 }
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.pde_import;
+
+import com.intellij.concurrency.SensitiveProgressWrapper;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+    Imports each of the sketches of a sketchbook into its own module. Sketches are converted concurrently on a bounded pool,
+    each by an {@link ImportSketchClasses} import of its own, within this single background task.
+ */
+public class ImportSketchbook extends Task.Backgroundable {
+
+    private final Logger logger = com.intellij.openapi.diagnostic.Logger.getInstance(ImportSketchbook.class);
+
+    /*
+        Each sketch import parses on the shared parsing executor and writes on the event dispatch thread, so a few concurrent
+        imports are enough to keep both busy.
+     */
+    private static final int SKETCH_IMPORT_THREAD_COUNT = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+
+    /*
+        Compiling the converted sources of a sketch keeps a core busy, so sketches are imported on every core when their
+        sources are checked by compiling them.
+     */
+    private static final int VALIDATING_SKETCH_IMPORT_THREAD_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private static final long SKETCH_IMPORT_POLL_INTERVAL_MILLIS = 100;
+
+    private final ProcessingImportBuilder importBuilder;
+    private final List<ImportSketchClasses> sketchImports;
+    private final int threadCount;
+
+    private final AtomicInteger sketchesCompleted = new AtomicInteger();
+    private final List<SketchImportResult> results = new CopyOnWriteArrayList<>();
+
+    /*
+        The import builder, if given, is cleaned up once all of the sketches have been imported.
+     */
+    public ImportSketchbook(@Nullable ProcessingImportBuilder importBuilder,
+                            @NotNull Project project,
+                            @NotNull List<ImportSketchClasses> sketchImports,
+                            int threadCount) {
+        super(project, "Importing Processing Sketchbook", true);
+        this.importBuilder = importBuilder;
+        this.sketchImports = sketchImports;
+        this.threadCount = Math.max(1, threadCount);
+
+        // A summary for each sketch would bury the outcome of the sketchbook import; the metrics of each are still recorded.
+        for (ImportSketchClasses sketchImport : sketchImports) {
+            sketchImport.setShowImportSummary(false);
+        }
+    }
+
+    /*
+        The number of sketches imported at once, by both the import wizard and the command-line converter, unless told otherwise.
+     */
+    static int defaultThreadCount(boolean validateConvertedSources) {
+        return validateConvertedSources ? VALIDATING_SKETCH_IMPORT_THREAD_COUNT : SKETCH_IMPORT_THREAD_COUNT;
+    }
+
+    /*
+        The name of the sketch, suffixed where necessary to make it unique among the given module names, to which it is added.
+     */
+    @NotNull
+    static String uniqueModuleName(@NotNull String sketchName, @NotNull Set<String> moduleNames) {
+        String moduleName = sketchName;
+
+        for (int suffix = 2; moduleNames.contains(moduleName); suffix++) {
+            moduleName = sketchName + "_" + suffix;
+        }
+
+        moduleNames.add(moduleName);
+
+        return moduleName;
+    }
+
+    @Override
+    public void run(@NotNull ProgressIndicator indicator) {
+        indicator.setIndeterminate(false);
+        indicator.setText("Importing " + sketchImports.size() + " sketches");
+
+        AtomicInteger threadIndex = new AtomicInteger();
+
+        ExecutorService sketchImportExecutor = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread sketchImportThread = new Thread(runnable, "Processing Sketchbook Import " + threadIndex.incrementAndGet());
+            sketchImportThread.setDaemon(true);
+            return sketchImportThread;
+        });
+
+        try {
+            List<Future<?>> runningImports = new ArrayList<>(sketchImports.size());
+
+            for (ImportSketchClasses sketchImport : sketchImports) {
+                runningImports.add(sketchImportExecutor.submit(() -> importSketch(sketchImport, indicator)));
+            }
+
+            for (Future<?> runningImport : runningImports) {
+                awaitImport(runningImport, indicator);
+            }
+        } finally {
+            sketchImportExecutor.shutdownNow();
+
+            if (importBuilder != null) {
+                importBuilder.cleanup();
+            }
+        }
+
+        List<String> failedSketches = new ArrayList<>();
+
+        for (SketchImportResult result : results) {
+            if (! result.isSuccessful()) {
+                failedSketches.add(result.getSketchName());
+            }
+        }
+
+        logger.info("Completed the import of " + sketchesCompleted.get() + " of " + sketchImports.size() + " sketches, of which " + failedSketches.size() + " failed.");
+
+        if (! failedSketches.isEmpty()) {
+            ImportNotifications.INSTANCE.warn(myProject, "Sketchbook partially imported",
+                    failedSketches.size() + " of " + sketchImports.size() + " sketches could not be imported: " + String.join(", ", failedSketches));
+        }
+    }
+
+    private void importSketch(@NotNull ImportSketchClasses sketchImport, @NotNull ProgressIndicator indicator) {
+        if (indicator.isCanceled()) {
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+
+        try {
+            /*
+                The wrapper shares the cancellation of the sketchbook task, but not its progress text. It is made the progress
+                of this thread, so that the checks for cancellation made within the platform see the sketchbook task cancelled.
+             */
+            SensitiveProgressWrapper sketchIndicator = new SensitiveProgressWrapper(indicator);
+            ProgressManager.getInstance().runProcess(() -> sketchImport.run(sketchIndicator), sketchIndicator);
+            results.add(new SketchImportResult(sketchImport.getSketchName(), System.currentTimeMillis() - startTime, null));
+        } catch (ProcessCanceledException pce) {
+            return;
+        } catch (RuntimeException failure) {
+            logger.warn("Import of the sketch '" + sketchImport.getSketchName() + "' failed.", failure);
+            String failureMessage = String.valueOf(failure.getMessage());
+
+            if (failure instanceof SketchCompileCheck.CompileCheckFailedException) {
+                failureMessage += "\n" + ((SketchCompileCheck.CompileCheckFailedException) failure).describeErrors();
+            }
+
+            results.add(new SketchImportResult(sketchImport.getSketchName(), System.currentTimeMillis() - startTime, failureMessage));
+        }
+
+        int completed = sketchesCompleted.incrementAndGet();
+
+        indicator.setFraction((double) completed / sketchImports.size());
+        indicator.setText2(completed + " of " + sketchImports.size() + " sketches imported, last '" + sketchImport.getSketchName() + "'");
+    }
+
+    private void awaitImport(@NotNull Future<?> runningImport, @NotNull ProgressIndicator indicator) {
+        while (true) {
+            indicator.checkCanceled();
+
+            try {
+                runningImport.get(SKETCH_IMPORT_POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException timeout) {
+                // Poll again, so that cancellation is noticed promptly.
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                throw new ProcessCanceledException(interrupted);
+            } catch (ExecutionException execution) {
+                logger.warn("A sketch import failed unexpectedly.", execution.getCause());
+                return;
+            }
+        }
+    }
+
+    /*
+        The outcome of each sketch import, in the order in which the imports completed.
+     */
+    @NotNull
+    public List<SketchImportResult> getResults() {
+        return results;
+    }
+
+    public static class SketchImportResult {
+        private final String sketchName;
+        private final long elapsedMillis;
+        private final String failure;
+
+        SketchImportResult(@NotNull String sketchName, long elapsedMillis, @Nullable String failure) {
+            this.sketchName = sketchName;
+            this.elapsedMillis = elapsedMillis;
+            this.failure = failure;
+        }
+
+        @NotNull
+        public String getSketchName() {
+            return sketchName;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public boolean isSuccessful() {
+            return failure == null;
+        }
+
+        @Nullable
+        public String getFailure() {
+            return failure;
+        }
+    }
+}
@@ -19,57 +19,163 @@
 package org.idea.processing.plugin.pde_import;
 
 import com.intellij.ide.highlighter.JavaFileType;
-import com.intellij.openapi.application.RunResult;
+import com.intellij.lang.java.JavaParserDefinition;
+import com.intellij.lexer.Lexer;
 import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
-import com.intellij.psi.PsiDirectory;
-import com.intellij.psi.PsiFile;
-import com.intellij.psi.codeStyle.CodeStyleManager;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.pom.java.LanguageLevel;
+import com.intellij.psi.*;
+import com.intellij.psi.impl.source.tree.ElementType;
 import com.intellij.util.PathUtil;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Collection;
+import java.io.IOException;
+import java.util.*;
 
+/**
+    Writes converted sketch files to the project package in a single command. The written files are not reformatted, so that
+    the write lock is held only for as long as it takes to add the files; reformatting is left to the caller.
+ */
 class ImportedSketchClassWriter implements Runnable {
     private final Logger logger = com.intellij.openapi.diagnostic.Logger.getInstance(ImportedSketchClassWriter.class);
 
     private final Project project;
     private final PsiDirectory packageFqn;
     private final Collection<PsiFile> sketchFiles;
+    private final Map<String, String> sketchTexts;
+    private final String commandGroupId;
+
+    private final List<VirtualFile> writtenFiles = new ArrayList<>();
 
-    public ImportedSketchClassWriter(@NotNull Project project, @NotNull PsiDirectory packageFqn, @NotNull Collection<PsiFile> sketchFiles) {
+    /*
+        Commands sharing a group ID are undone together, so all of the batches written during an import can be undone at once.
+     */
+    public ImportedSketchClassWriter(@NotNull Project project,
+                                     @NotNull PsiDirectory packageFqn,
+                                     @NotNull Collection<PsiFile> sketchFiles,
+                                     @NotNull String commandGroupId) {
+        this(project, packageFqn, sketchFiles, Collections.emptyMap(), commandGroupId);
+    }
+
+    /*
+        Sketch texts, keyed by the name of their tab, have already been converted and are written to the package as they are,
+        without building any PSI for them. Only their package statement is rewritten, to that of the package written to.
+     */
+    public ImportedSketchClassWriter(@NotNull Project project,
+                                     @NotNull PsiDirectory packageFqn,
+                                     @NotNull Collection<PsiFile> sketchFiles,
+                                     @NotNull Map<String, String> sketchTexts,
+                                     @NotNull String commandGroupId) {
         this.project = project;
         this.packageFqn = packageFqn;
         this.sketchFiles = sketchFiles;
+        this.sketchTexts = sketchTexts;
+        this.commandGroupId = commandGroupId;
     }
 
     @Override
     public void run() {
-        logger.info("Preparing to write a total of " + sketchFiles.size() + " to the project package " + packageFqn + ".");
+        logger.info("Preparing to write a total of " + (sketchFiles.size() + sketchTexts.size()) + " to the project package " + packageFqn + ".");
 
         for (PsiFile sketchFile : sketchFiles) {
-            logger.info("Writing the sketch PSI file '" + sketchFile.getName() + "' to the project package '" + packageFqn + "'.");
-
             String sketchFileExtension = PathUtil.getFileExtension(sketchFile.getName());
 
             if (sketchFileExtension == null || ! sketchFileExtension.equals(JavaFileType.DEFAULT_EXTENSION)) {
-                String generatedSketchFileName = PathUtil.makeFileName(PathUtil.getFileName(sketchFile.getName()), JavaFileType.DEFAULT_EXTENSION);
+                sketchFile.setName(javaFileName(sketchFile.getName()));
+            }
+        }
+
+        WriteCommandAction.runWriteCommandAction(project, "Import Processing Sketch", commandGroupId, () -> {
+            PsiPackage sketchPackage = JavaDirectoryService.getInstance().getPackage(packageFqn);
+            String sketchPackageName = sketchPackage == null ? "" : sketchPackage.getQualifiedName();
+
+            for (PsiFile sketchFile : sketchFiles) {
+                logger.debug("Writing the sketch PSI file '" + sketchFile.getName() + "' to the project package '" + packageFqn + "'.");
 
-                sketchFile.setName(generatedSketchFileName);
+                PsiElement writtenFile = packageFqn.add(sketchFile);
+
+                if (writtenFile instanceof PsiFile && ((PsiFile) writtenFile).getVirtualFile() != null) {
+                    writtenFiles.add(((PsiFile) writtenFile).getVirtualFile());
+                }
             }
 
-            WriteCommandAction.Simple<String> command = new WriteCommandAction.Simple<String>(project, sketchFile) {
+            for (Map.Entry<String, String> sketchText : sketchTexts.entrySet()) {
+                String sketchFileName = javaFileName(sketchText.getKey());
+
+                logger.debug("Writing the converted sketch text '" + sketchFileName + "' to the project package '" + packageFqn + "'.");
 
-                @Override
-                protected void run() throws Throwable {
-                    CodeStyleManager.getInstance(project).reformat(sketchFile, false);
-                    packageFqn.add(sketchFile);
+                try {
+                    VirtualFile writtenFile = packageFqn.getVirtualFile().createChildData(this, sketchFileName);
+                    VfsUtil.saveText(writtenFile, relocate(sketchText.getValue(), sketchPackageName));
+
+                    writtenFiles.add(writtenFile);
+                } catch (IOException io) {
+                    logger.error("Unable to write the sketch file '" + sketchFileName + "' to the project package '" + packageFqn + "'.", io);
                 }
-            };
+            }
+        });
+
+        logger.debug("Wrote " + writtenFiles.size() + " of " + (sketchFiles.size() + sketchTexts.size()) + " sketch files to the project package '" + packageFqn + "'.");
+    }
+
+    @NotNull
+    private static String javaFileName(@NotNull String sketchFileName) {
+        String sketchFileExtension = PathUtil.getFileExtension(sketchFileName);
+
+        if (sketchFileExtension != null && sketchFileExtension.equals(JavaFileType.DEFAULT_EXTENSION)) {
+            return sketchFileName;
+        }
+
+        return PathUtil.makeFileName(PathUtil.getFileName(sketchFileName), JavaFileType.DEFAULT_EXTENSION);
+    }
+
+    /*
+        Give the Java text the package statement of the given package, replacing any package statement it already has. Only
+        the tokens up to the end of the package statement are read; the rest of the text is left as it is.
+     */
+    @NotNull
+    static String relocate(@NotNull String javaText, @NotNull String packageName) {
+        if (packageName.isEmpty()) {
+            return javaText;
+        }
+
+        Lexer lexer = JavaParserDefinition.createLexer(LanguageLevel.HIGHEST);
+        lexer.start(javaText);
+
+        while (lexer.getTokenType() != null && ElementType.JAVA_COMMENT_OR_WHITESPACE_BIT_SET.contains(lexer.getTokenType())) {
+            lexer.advance();
+        }
+
+        String packageStatement = "package " + packageName + ";";
 
-            RunResult<String> result = command.execute();
-            logger.debug("Result of executing the file write action is: '" + result.getResultObject() + "'.");
+        if (lexer.getTokenType() == JavaTokenType.PACKAGE_KEYWORD) {
+            int packageStatementStart = lexer.getTokenStart();
+
+            while (lexer.getTokenType() != null && lexer.getTokenType() != JavaTokenType.SEMICOLON) {
+                lexer.advance();
+            }
+
+            if (lexer.getTokenType() == null) {
+                return javaText;
+            }
+
+            return javaText.substring(0, packageStatementStart) + packageStatement + javaText.substring(lexer.getTokenEnd());
         }
+
+        // Comments preceding the first declaration, such as a licence header, are kept ahead of the package statement.
+        int packageStatementStart = lexer.getTokenType() == null ? javaText.length() : lexer.getTokenStart();
+
+        return javaText.substring(0, packageStatementStart) + packageStatement + "\n\n" + javaText.substring(packageStatementStart);
+    }
+
+    /*
+        Files written to the project package by the most recent run of the writer.
+     */
+    @NotNull
+    public List<VirtualFile> getWrittenFiles() {
+        return writtenFiles;
     }
 }
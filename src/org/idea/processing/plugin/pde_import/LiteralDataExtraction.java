@@ -0,0 +1,628 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.pde_import;
+
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.io.StreamUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.JavaTokenType;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+    Moves oversized literal data out of the text of a sketch tab. Arrays of numbers, of any number of dimensions, initialised
+    with more than 1024 elements, and very long string literals, are slow to parse, and approach the limits of the class file
+    format on the size of a method and of a constant. Their data is extracted into binary resources, and the initializer
+    replaced with a call to the generated {@code SketchData} loader class, which memory maps the resource.
+
+    Only the initializers of fields are extracted, as they are evaluated once, when the sketch starts. An initializer within a
+    method, such as draw, would otherwise load its resource every time the method is called.
+
+    Numbers are stored big-endian, as Java would write them to a data stream, and strings as UTF-8. The data of an array of
+    more than one dimension is preceded by the length of each of its arrays, in the order in which they are initialised.
+ */
+final class LiteralDataExtraction {
+
+    static final String LOADER_CLASS_NAME = "SketchData";
+
+    /* Directory below the resources root into which the data is extracted. */
+    static final String DATA_RESOURCE_DIRECTORY = "sketch-data";
+
+    /*
+        An array initializer compiles to several bytes of code per element, so that some thousands of elements exceed the
+        64KB limit on the code of a method. Arrays are extracted well before that, as they are slow to parse long before.
+     */
+    private static final int MAX_INLINE_ARRAY_ELEMENTS = Integer.getInteger("processing.import.max.inline.elements", 1024);
+
+    /*
+        A string constant is limited to 64KB of modified UTF-8, in which a character may take up to three bytes.
+     */
+    private static final int MAX_INLINE_STRING_LENGTH = Integer.getInteger("processing.import.max.inline.string", 16 * 1024);
+
+    private static final Key<List<ExtractedLiteral>> EXTRACTED_LITERALS = Key.create("processing.import.extracted.literals");
+
+    private static final Map<IElementType, DataType> ARRAY_ELEMENT_TYPES = new HashMap<>();
+
+    static {
+        ARRAY_ELEMENT_TYPES.put(JavaTokenType.BYTE_KEYWORD, DataType.BYTE);
+        ARRAY_ELEMENT_TYPES.put(JavaTokenType.SHORT_KEYWORD, DataType.SHORT);
+        ARRAY_ELEMENT_TYPES.put(JavaTokenType.INT_KEYWORD, DataType.INT);
+        ARRAY_ELEMENT_TYPES.put(JavaTokenType.LONG_KEYWORD, DataType.LONG);
+        ARRAY_ELEMENT_TYPES.put(JavaTokenType.FLOAT_KEYWORD, DataType.FLOAT);
+        ARRAY_ELEMENT_TYPES.put(JavaTokenType.DOUBLE_KEYWORD, DataType.DOUBLE);
+    }
+
+    enum DataType {
+        BYTE("byte", "loadBytes", 1),
+        SHORT("short", "loadShorts", 2),
+        INT("int", "loadInts", 4),
+        LONG("long", "loadLongs", 8),
+        FLOAT("float", "loadFloats", 4),
+        DOUBLE("double", "loadDoubles", 8),
+        STRING("String", "loadString", 1);
+
+        private final String typeName;
+        private final String loaderMethod;
+        private final int width;
+
+        DataType(@NotNull String typeName, @NotNull String loaderMethod, int width) {
+            this.typeName = typeName;
+            this.loaderMethod = loaderMethod;
+            this.width = width;
+        }
+
+        /*
+            Whether a literal of the given type may initialise an element of this type.
+         */
+        private boolean accepts(@NotNull IElementType literalType) {
+            switch (this) {
+                case LONG:
+                    return literalType == JavaTokenType.INTEGER_LITERAL || literalType == JavaTokenType.LONG_LITERAL;
+                case FLOAT:
+                    return literalType == JavaTokenType.INTEGER_LITERAL || literalType == JavaTokenType.LONG_LITERAL
+                            || literalType == JavaTokenType.FLOAT_LITERAL;
+                case DOUBLE:
+                    return literalType == JavaTokenType.INTEGER_LITERAL || literalType == JavaTokenType.LONG_LITERAL
+                            || literalType == JavaTokenType.FLOAT_LITERAL || literalType == JavaTokenType.DOUBLE_LITERAL;
+                case STRING:
+                    return literalType == JavaTokenType.STRING_LITERAL;
+                default:
+                    return literalType == JavaTokenType.INTEGER_LITERAL;
+            }
+        }
+    }
+
+    private final String javaText;
+    private final List<ExtractedLiteral> extractedLiterals;
+
+    private LiteralDataExtraction(@NotNull String javaText, @NotNull List<ExtractedLiteral> extractedLiterals) {
+        this.javaText = javaText;
+        this.extractedLiterals = extractedLiterals;
+    }
+
+    /*
+        Extract the oversized literals of a preprocessed sketch tab. Resources are named after the tab, and numbered in the
+        order in which their literals appear.
+     */
+    @NotNull
+    static LiteralDataExtraction extract(@NotNull String tabName, @NotNull String javaText) {
+        List<PdePreprocessor.Token> tokens = PdePreprocessor.significantTokens(javaText);
+        List<ExtractedLiteral> extractedLiterals = new ArrayList<>(0);
+
+        StringBuilder extractedText = null;
+        int copiedUpTo = 0;
+
+        /*
+            Whether each enclosing brace opens a class body, in which declarations are of fields. The top level of a tab is
+            made up of the fields and methods of the sketch class, or of the classes of the tab.
+         */
+        Deque<Boolean> memberScopes = new ArrayDeque<>();
+        memberScopes.push(true);
+
+        for (int idx = 0; idx < tokens.size(); idx++) {
+            PdePreprocessor.Token token = tokens.get(idx);
+
+            if (token.type == JavaTokenType.RBRACE) {
+                if (memberScopes.size() > 1) {
+                    memberScopes.pop();
+                }
+
+                continue;
+            }
+
+            boolean inMemberScope = memberScopes.peek();
+
+            int replacedFrom = token.start;
+            int replacedUpTo;
+            int dimensions = 1;
+            DataType dataType;
+            byte[] data;
+            ArrayType arrayType;
+
+            if (token.type == JavaTokenType.STRING_LITERAL && token.end - token.start > MAX_INLINE_STRING_LENGTH && inMemberScope) {
+                String value = StringUtil.unescapeStringCharacters(javaText.substring(token.start + 1, token.end - 1));
+
+                dataType = DataType.STRING;
+                data = value.getBytes(StandardCharsets.UTF_8);
+                replacedUpTo = token.end;
+            } else if (token.type == JavaTokenType.LBRACE && inMemberScope && (arrayType = arrayType(tokens, idx)) != null) {
+                ArrayInitializer initializer = ArrayInitializer.parse(tokens, idx, arrayType.dataType, arrayType.dimensions);
+
+                if (initializer == null || initializer.elementCount <= MAX_INLINE_ARRAY_ELEMENTS) {
+                    memberScopes.push(false);
+                    continue;
+                }
+
+                // An array creation expression, 'new float[] { ... }', is replaced as a whole.
+                replacedFrom = tokens.get(arrayType.expressionStart).start;
+
+                dataType = arrayType.dataType;
+                dimensions = arrayType.dimensions;
+                data = initializer.encode(javaText, tokens, dataType);
+                replacedUpTo = tokens.get(initializer.closingBrace).end;
+                idx = initializer.closingBrace;
+            } else {
+                if (token.type == JavaTokenType.LBRACE) {
+                    memberScopes.push(opensClassBody(tokens, idx));
+                }
+
+                continue;
+            }
+
+            String resourcePath = DATA_RESOURCE_DIRECTORY + "/" + resourceName(tabName, extractedLiterals.size());
+            extractedLiterals.add(new ExtractedLiteral(resourcePath, dataType, data));
+
+            if (extractedText == null) {
+                extractedText = new StringBuilder(javaText.length() / 2);
+            }
+
+            extractedText.append(javaText, copiedUpTo, replacedFrom).append(loaderCall(dataType, dimensions, resourcePath));
+            copiedUpTo = replacedUpTo;
+        }
+
+        if (extractedText == null) {
+            return new LiteralDataExtraction(javaText, Collections.emptyList());
+        }
+
+        extractedText.append(javaText, copiedUpTo, javaText.length());
+
+        return new LiteralDataExtraction(extractedText.toString(), extractedLiterals);
+    }
+
+    @NotNull
+    String getJavaText() {
+        return javaText;
+    }
+
+    @NotNull
+    List<ExtractedLiteral> getExtractedLiterals() {
+        return extractedLiterals;
+    }
+
+    /*
+        Record the literals extracted from the text of the given parsed tab, so that they are written alongside it.
+     */
+    void attachTo(@NotNull PsiFile parsedTab) {
+        if (! extractedLiterals.isEmpty()) {
+            parsedTab.putUserData(EXTRACTED_LITERALS, extractedLiterals);
+        }
+    }
+
+    @NotNull
+    static List<ExtractedLiteral> getExtractedLiterals(@NotNull PsiFile parsedTab) {
+        List<ExtractedLiteral> extractedLiterals = parsedTab.getUserData(EXTRACTED_LITERALS);
+        return extractedLiterals == null ? Collections.emptyList() : extractedLiterals;
+    }
+
+    /*
+        Text of the loader class through which the extracted resources are read.
+     */
+    @NotNull
+    static String loaderText() throws IOException {
+        try (InputStream loaderTemplate = LiteralDataExtraction.class.getResourceAsStream(LOADER_CLASS_NAME + ".java.template")) {
+            if (loaderTemplate == null) {
+                throw new IOException("The template of the sketch data loader class could not be found.");
+            }
+
+            return new String(StreamUtil.loadFromStream(loaderTemplate), StandardCharsets.UTF_8);
+        }
+    }
+
+    /*
+        Whether the brace at the given index opens the body of a class, interface or enum, rather than a method, a block or
+        an array initializer. An anonymous class body is taken for a block.
+     */
+    private static boolean opensClassBody(@NotNull List<PdePreprocessor.Token> tokens, int braceIdx) {
+        for (int idx = braceIdx - 1; idx >= 0; idx--) {
+            IElementType type = tokens.get(idx).type;
+
+            if (type == JavaTokenType.CLASS_KEYWORD || type == JavaTokenType.INTERFACE_KEYWORD || type == JavaTokenType.ENUM_KEYWORD) {
+                return true;
+            }
+
+            if (type == JavaTokenType.SEMICOLON || type == JavaTokenType.LBRACE || type == JavaTokenType.RBRACE
+                    || type == JavaTokenType.RPARENTH || type == JavaTokenType.EQ || type == JavaTokenType.ARROW) {
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    /*
+        The type of the array initialised by the brace at the given index, for arrays of a primitive number type declared or
+        created in one of the forms 'float[][] a = {', 'float a[][] = {' or 'new float[][] {', with any number of dimensions.
+     */
+    @Nullable
+    private static ArrayType arrayType(@NotNull List<PdePreprocessor.Token> tokens, int braceIdx) {
+        int idx = braceIdx - 1;
+
+        if (idx < 0) {
+            return null;
+        }
+
+        if (tokens.get(idx).type == JavaTokenType.RBRACKET) {
+            int dimensions = countDimensions(tokens, idx);
+            idx -= 2 * dimensions;
+
+            if (idx < 1 || tokens.get(idx - 1).type != JavaTokenType.NEW_KEYWORD) {
+                return null;
+            }
+
+            DataType dataType = ARRAY_ELEMENT_TYPES.get(tokens.get(idx).type);
+
+            return dataType == null ? null : new ArrayType(dataType, dimensions, idx - 1);
+        }
+
+        if (tokens.get(idx).type != JavaTokenType.EQ) {
+            return null;
+        }
+
+        // Brackets may follow the name of the variable, its type, or both.
+        int nameDimensions = countDimensions(tokens, --idx);
+        idx -= 2 * nameDimensions;
+
+        if (idx < 1 || tokens.get(idx).type != JavaTokenType.IDENTIFIER) {
+            return null;
+        }
+
+        int typeDimensions = countDimensions(tokens, --idx);
+        idx -= 2 * typeDimensions;
+
+        if (idx < 0 || nameDimensions + typeDimensions == 0) {
+            return null;
+        }
+
+        DataType dataType = ARRAY_ELEMENT_TYPES.get(tokens.get(idx).type);
+
+        return dataType == null ? null : new ArrayType(dataType, nameDimensions + typeDimensions, braceIdx);
+    }
+
+    /*
+        The number of pairs of brackets ending at the given index.
+     */
+    private static int countDimensions(@NotNull List<PdePreprocessor.Token> tokens, int idx) {
+        int dimensions = 0;
+
+        while (idx >= 1 && tokens.get(idx).type == JavaTokenType.RBRACKET && tokens.get(idx - 1).type == JavaTokenType.LBRACKET) {
+            dimensions++;
+            idx -= 2;
+        }
+
+        return dimensions;
+    }
+
+    /*
+        The index of the brace closing an initializer made up only of number literals of the given type, each optionally
+        signed, or -1 where the initializer contains anything else.
+     */
+    private static int findNumericInitializerEnd(@NotNull List<PdePreprocessor.Token> tokens, int braceIdx, @NotNull DataType dataType) {
+        boolean expectElement = true;
+
+        for (int idx = braceIdx + 1; idx < tokens.size(); idx++) {
+            IElementType type = tokens.get(idx).type;
+
+            if (type == JavaTokenType.RBRACE) {
+                return idx;
+            }
+
+            if (expectElement) {
+                if ((type == JavaTokenType.MINUS || type == JavaTokenType.PLUS) && idx + 1 < tokens.size()) {
+                    type = tokens.get(++idx).type;
+                }
+
+                if (! dataType.accepts(type)) {
+                    return -1;
+                }
+
+                expectElement = false;
+            } else if (type == JavaTokenType.COMMA) {
+                expectElement = true;
+            } else {
+                return -1;
+            }
+        }
+
+        return -1;
+    }
+
+    private static int countElements(@NotNull List<PdePreprocessor.Token> tokens, int braceIdx, int closingBrace) {
+        int elementCount = 0;
+
+        for (int idx = braceIdx + 1; idx < closingBrace; idx++) {
+            IElementType type = tokens.get(idx).type;
+
+            if (type != JavaTokenType.COMMA && type != JavaTokenType.MINUS && type != JavaTokenType.PLUS) {
+                elementCount++;
+            }
+        }
+
+        return elementCount;
+    }
+
+    @NotNull
+    private static byte[] encodeElements(@NotNull String javaText,
+                                         @NotNull List<PdePreprocessor.Token> tokens,
+                                         int braceIdx,
+                                         int closingBrace,
+                                         int elementCount,
+                                         @NotNull DataType dataType) {
+        ByteBuffer data = ByteBuffer.allocate(elementCount * dataType.width);
+        boolean negative = false;
+
+        for (int idx = braceIdx + 1; idx < closingBrace; idx++) {
+            PdePreprocessor.Token token = tokens.get(idx);
+
+            if (token.type == JavaTokenType.COMMA || token.type == JavaTokenType.PLUS) {
+                continue;
+            }
+
+            if (token.type == JavaTokenType.MINUS) {
+                negative = true;
+                continue;
+            }
+
+            String literal = javaText.substring(token.start, token.end).replace("_", "");
+            boolean isIntegral = token.type == JavaTokenType.INTEGER_LITERAL || token.type == JavaTokenType.LONG_LITERAL;
+
+            switch (dataType) {
+                case BYTE:
+                    data.put((byte) signed(parseIntegral(literal), negative));
+                    break;
+                case SHORT:
+                    data.putShort((short) signed(parseIntegral(literal), negative));
+                    break;
+                case INT:
+                    data.putInt((int) signed(parseIntegral(literal), negative));
+                    break;
+                case LONG:
+                    data.putLong(signed(parseIntegral(literal), negative));
+                    break;
+                case FLOAT:
+                    float floatValue = isIntegral ? (float) parseIntegral(literal) : Float.parseFloat(literal);
+                    data.putFloat(negative ? -floatValue : floatValue);
+                    break;
+                case DOUBLE:
+                    double doubleValue = isIntegral ? (double) parseIntegral(literal) : Double.parseDouble(literal);
+                    data.putDouble(negative ? -doubleValue : doubleValue);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Arrays of " + dataType + " cannot be extracted.");
+            }
+
+            negative = false;
+        }
+
+        return data.array();
+    }
+
+    private static long signed(long value, boolean negative) {
+        return negative ? -value : value;
+    }
+
+    /*
+        The value of a decimal, hexadecimal, octal or binary integer literal. Hexadecimal, octal and binary literals may set
+        the sign bit, as in 0xFFFF8800, and are read as unsigned.
+     */
+    private static long parseIntegral(@NotNull String literal) {
+        String digits = StringUtil.trimEnd(StringUtil.trimEnd(literal, "L"), "l");
+
+        if (digits.startsWith("0x") || digits.startsWith("0X")) {
+            return Long.parseUnsignedLong(digits.substring(2), 16);
+        } else if (digits.startsWith("0b") || digits.startsWith("0B")) {
+            return Long.parseUnsignedLong(digits.substring(2), 2);
+        } else if (digits.length() > 1 && digits.startsWith("0")) {
+            return Long.parseUnsignedLong(digits.substring(1), 8);
+        }
+
+        return Long.parseLong(digits);
+    }
+
+    @NotNull
+    private static String resourceName(@NotNull String tabName, int literalIndex) {
+        return tabName.replaceAll("[^A-Za-z0-9_\\-]", "_") + "_" + literalIndex + ".bin";
+    }
+
+    @NotNull
+    private static String loaderCall(@NotNull DataType dataType, int dimensions, @NotNull String resourcePath) {
+        String loaderClass = ImportSketchClasses.DEFAULT_SKETCH_PACKAGE_STATEMENT + "." + LOADER_CLASS_NAME;
+
+        if (dimensions == 1) {
+            return loaderClass + "." + dataType.loaderMethod + "(\"" + resourcePath + "\")";
+        }
+
+        String arrayType = dataType.typeName + StringUtil.repeat("[]", dimensions);
+
+        return "((" + arrayType + ") " + loaderClass + ".loadArray(\"" + resourcePath + "\", " + dataType.typeName + ".class, " + dimensions + "))";
+    }
+
+    private static class ArrayType {
+        private final DataType dataType;
+        private final int dimensions;
+        /* Index of the first token of the replaced expression: the brace of an initializer, or 'new' of a creation. */
+        private final int expressionStart;
+
+        private ArrayType(@NotNull DataType dataType, int dimensions, int expressionStart) {
+            this.dataType = dataType;
+            this.dimensions = dimensions;
+            this.expressionStart = expressionStart;
+        }
+    }
+
+    /*
+        An initializer made up only of number literals, nested to the number of dimensions of its array.
+     */
+    private static class ArrayInitializer {
+        private final int openingBrace;
+        private final int closingBrace;
+        private final int elementCount;
+        /* The initializers of the arrays of an array of more than one dimension; null for an array of numbers. */
+        private final List<ArrayInitializer> nestedInitializers;
+
+        private ArrayInitializer(int openingBrace, int closingBrace, int elementCount, @Nullable List<ArrayInitializer> nestedInitializers) {
+            this.openingBrace = openingBrace;
+            this.closingBrace = closingBrace;
+            this.elementCount = elementCount;
+            this.nestedInitializers = nestedInitializers;
+        }
+
+        /*
+            The initializer opened by the brace at the given index, or null where it holds anything but number literals of
+            the given type, and nested initializers of the given number of dimensions.
+         */
+        @Nullable
+        static ArrayInitializer parse(@NotNull List<PdePreprocessor.Token> tokens, int braceIdx, @NotNull DataType dataType, int dimensions) {
+            if (dimensions == 1) {
+                int closingBrace = findNumericInitializerEnd(tokens, braceIdx, dataType);
+
+                return closingBrace < 0 ? null : new ArrayInitializer(braceIdx, closingBrace, countElements(tokens, braceIdx, closingBrace), null);
+            }
+
+            List<ArrayInitializer> nestedInitializers = new ArrayList<>();
+            int elementCount = 0;
+            boolean expectInitializer = true;
+
+            for (int idx = braceIdx + 1; idx < tokens.size(); idx++) {
+                IElementType type = tokens.get(idx).type;
+
+                if (type == JavaTokenType.RBRACE) {
+                    return new ArrayInitializer(braceIdx, idx, elementCount, nestedInitializers);
+                }
+
+                if (expectInitializer && type == JavaTokenType.LBRACE) {
+                    ArrayInitializer nestedInitializer = parse(tokens, idx, dataType, dimensions - 1);
+
+                    if (nestedInitializer == null) {
+                        return null;
+                    }
+
+                    nestedInitializers.add(nestedInitializer);
+                    elementCount += nestedInitializer.elementCount;
+                    idx = nestedInitializer.closingBrace;
+                    expectInitializer = false;
+                } else if (! expectInitializer && type == JavaTokenType.COMMA) {
+                    expectInitializer = true;
+                } else {
+                    return null;
+                }
+            }
+
+            return null;
+        }
+
+        /*
+            The numbers of an array of one dimension, and the lengths of its arrays followed by their data for an array of
+            more.
+         */
+        @NotNull
+        byte[] encode(@NotNull String javaText, @NotNull List<PdePreprocessor.Token> tokens, @NotNull DataType dataType) {
+            if (nestedInitializers == null) {
+                return encodeElements(javaText, tokens, openingBrace, closingBrace, elementCount, dataType);
+            }
+
+            ByteArrayOutputStream data = new ByteArrayOutputStream(elementCount * dataType.width + 4 * (nestedInitializers.size() + 1));
+            writeNested(data, javaText, tokens, dataType);
+
+            return data.toByteArray();
+        }
+
+        private void writeNested(@NotNull ByteArrayOutputStream data, @NotNull String javaText,
+                                 @NotNull List<PdePreprocessor.Token> tokens, @NotNull DataType dataType) {
+            if (nestedInitializers == null) {
+                data.write(ByteBuffer.allocate(4).putInt(elementCount).array(), 0, 4);
+
+                byte[] elements = encodeElements(javaText, tokens, openingBrace, closingBrace, elementCount, dataType);
+                data.write(elements, 0, elements.length);
+                return;
+            }
+
+            data.write(ByteBuffer.allocate(4).putInt(nestedInitializers.size()).array(), 0, 4);
+
+            for (ArrayInitializer nestedInitializer : nestedInitializers) {
+                nestedInitializer.writeNested(data, javaText, tokens, dataType);
+            }
+        }
+    }
+
+    static class ExtractedLiteral {
+        private final String resourcePath;
+        private final DataType dataType;
+        private final byte[] data;
+
+        private ExtractedLiteral(@NotNull String resourcePath, @NotNull DataType dataType, @NotNull byte[] data) {
+            this.resourcePath = resourcePath;
+            this.dataType = dataType;
+            this.data = data;
+        }
+
+        /*
+            Path of the resource, relative to the resources root.
+         */
+        @NotNull
+        String getResourcePath() {
+            return resourcePath;
+        }
+
+        int getSize() {
+            return data.length;
+        }
+
+        /*
+            Write the data to its resource below the given resources root. The VFS is not refreshed.
+         */
+        void writeTo(@NotNull File resourceRoot) throws IOException {
+            Path resourceFile = resourceRoot.toPath().resolve(resourcePath);
+
+            Files.createDirectories(resourceFile.getParent());
+            Files.write(resourceFile, data);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.pde_import;
+
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+    A sketch file that declares the Processing draw method outside of a class, and so may be the main sketch file.
+    The file is only parsed into a sketch class once it has been selected as the main sketch file. A candidate read from the
+    conversion cache has no PSI at all until then.
+ */
+class MainSketchCandidate {
+
+    private static final Collection<String> PAPPLET_METHOD_NAMES = Arrays.asList("setup", "draw", "settings");
+
+    private final String name;
+    private final CharSequence sketchText;
+    private final SketchTokenScan tokenScan;
+
+    private SketchFileAnalysis analysis;
+
+    MainSketchCandidate(@NotNull SketchFileAnalysis analysis, @NotNull SketchTokenScan tokenScan) {
+        this(analysis.getSketchFile().getName(), analysis.getSketchFile().getViewProvider().getContents(), tokenScan);
+        this.analysis = analysis;
+    }
+
+    MainSketchCandidate(@NotNull String name, @NotNull CharSequence sketchText, @NotNull SketchTokenScan tokenScan) {
+        this.name = name;
+        this.sketchText = sketchText;
+        this.tokenScan = tokenScan;
+    }
+
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    /*
+        The analysis of the sketch file, or null for a candidate read from the conversion cache that has not been parsed.
+     */
+    @Nullable
+    public SketchFileAnalysis getAnalysis() {
+        return analysis;
+    }
+
+    /*
+        Analyse the sketch file, parsing it from its text if it was read from the conversion cache.
+
+        Must be invoked from within a read action.
+     */
+    @NotNull
+    public SketchFileAnalysis parse(@NotNull Project project) {
+        if (analysis == null) {
+            analysis = SketchFileAnalysis.analyze(
+                    PsiFileFactory.getInstance(project).createFileFromText(name, JavaFileType.INSTANCE, sketchText.toString()));
+        }
+
+        return analysis;
+    }
+
+    /*
+        Introduce a topmost, parent class into the sketch file, named after the file. The Processing methods of the class
+        are made public, as they override the methods of PApplet.
+
+        Must be invoked from within a read action.
+     */
+    @NotNull
+    public PsiClass createSketchClass(@NotNull PsiElementFactory elementFactory) {
+        String sketchText = tokenScan.withoutImports(sketchText);
+
+        PsiClass unanonymisedSketchClass = elementFactory.createClassFromText(sketchText, null);
+        unanonymisedSketchClass.setName(ClassNameSuggester.suggest(name));
+
+        for (PsiMethod method : unanonymisedSketchClass.getMethods()) {
+            if (method.getParameterList().getParametersCount() == 0 && PAPPLET_METHOD_NAMES.contains(method.getName())) {
+                method.getModifierList().setModifierProperty(PsiModifier.PUBLIC, true);
+            }
+        }
+
+        return unanonymisedSketchClass;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
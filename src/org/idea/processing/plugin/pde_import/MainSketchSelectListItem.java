@@ -18,26 +18,19 @@
 
 package org.idea.processing.plugin.pde_import;
 
-import com.intellij.openapi.util.Pair;
-import com.intellij.psi.PsiClass;
-import com.intellij.psi.PsiFile;
-import com.intellij.psi.PsiImportList;
-
-import java.util.Map;
-
 class MainSketchSelectListItem {
-    private final Map.Entry<Pair<PsiFile, PsiClass>, PsiImportList> entry;
+    private final MainSketchCandidate candidate;
 
-    public MainSketchSelectListItem(Map.Entry<Pair<PsiFile, PsiClass>, PsiImportList> entry) {
-        this.entry = entry;
+    public MainSketchSelectListItem(MainSketchCandidate candidate) {
+        this.candidate = candidate;
     }
 
-    public Map.Entry<Pair<PsiFile, PsiClass>, PsiImportList> getEntry() {
-        return entry;
+    public MainSketchCandidate getCandidate() {
+        return candidate;
     }
 
     @Override
     public String toString() {
-        return entry.getKey().first.getName();
+        return candidate.getName();
     }
-}
\ No newline at end of file
+}
@@ -20,95 +20,65 @@ package org.idea.processing.plugin.pde_import;
 
 import com.intellij.ide.highlighter.JavaFileType;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.util.Pair;
 import com.intellij.psi.*;
 import com.intellij.psi.search.GlobalSearchScope;
-import com.intellij.psi.util.PsiTreeUtil;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class MigrationActions {
 
     /*
      * For the interface check determine first whether in the tree the PsiErrorElement has a parent of type PsiClass.
-     * If it does not, then the class is a main sketch file.
+     * If it does not, then the class is a main sketch file. The check is made whilst each file is analysed, so no PSI is
+     * read here.
      */
-    public static Collection<PsiFile> firstStageMainSketchIdentification(@NotNull Collection<PsiFile> parsedPdeFiles) {
-        Set<PsiFile> shortlist = new HashSet<>();
+    public static Collection<SketchFileAnalysis> firstStageMainSketchIdentification(@NotNull Collection<SketchFileAnalysis> analysedPdeFiles) {
+        Set<SketchFileAnalysis> shortlist = new HashSet<>();
 
-        for (PsiFile parsedPdeFile : parsedPdeFiles) {
-            PsiErrorElement firstErrorInFile = PsiTreeUtil.findChildOfType(parsedPdeFile, PsiErrorElement.class);
-
-            if (firstErrorInFile == null) {
-                continue;
-            }
-
-            PsiClass errorContainingClass = PsiTreeUtil.getParentOfType(firstErrorInFile, PsiClass.class);
-
-            if (errorContainingClass == null) {
-                shortlist.add(parsedPdeFile);
+        for (SketchFileAnalysis analysedPdeFile : analysedPdeFiles) {
+            if (analysedPdeFile.hasTopLevelError()) {
+                shortlist.add(analysedPdeFile);
             }
         }
 
         return shortlist;
     }
 
-    public static Map<Pair<PsiFile, PsiClass>, PsiImportList> secondStageMainSketchIdentification(@NotNull Collection<PsiFile> mainSketchClassShortlist,
-                                                                                                  @NotNull PsiElementFactory elementFactory) {
-        Map<Pair<PsiFile, PsiClass>, PsiImportList> mainSketchClasses = new HashMap<>(3);
-
-        /* Introduce a topmost, parent class into each of the candidates, and re-evaluate to select the main sketch class. */
-        for (PsiFile mainSketchCandidate : mainSketchClassShortlist) {
-            PsiImportList sketchImportList = PsiTreeUtil.findChildOfType(mainSketchCandidate, PsiImportList.class);
+    /*
+     * Of the short-listed files, select those that declare a draw method with no parameters outside of a class. Such a
+     * method is probably the PApplet draw method. Candidates are identified from the tokens of each file alone.
+     */
+    public static List<MainSketchCandidate> secondStageMainSketchIdentification(@NotNull Collection<SketchFileAnalysis> mainSketchClassShortlist) {
+        List<MainSketchCandidate> mainSketchCandidates = new ArrayList<>(3);
 
-            Set<String> allImportStatements = Arrays.stream(sketchImportList.getAllImportStatements())
-                    .map(PsiImportStatementBase::getText)
-                    .collect(Collectors.toSet());
+        for (SketchFileAnalysis candidateAnalysis : mainSketchClassShortlist) {
+            SketchTokenScan tokenScan = SketchTokenScan.scan(candidateAnalysis.getSketchFile().getViewProvider().getContents());
 
-            String mainSketchCandidateStr = mainSketchCandidate.getViewProvider().getContents().toString();
+            if (tokenScan.declaresTopLevelMethod("draw")) {
+                mainSketchCandidates.add(new MainSketchCandidate(candidateAnalysis, tokenScan));
+            }
+        }
 
-            if (! allImportStatements.isEmpty()) {
-                StringJoiner sketchClassWithoutImportsJoiner = new StringJoiner("\n");
+        return mainSketchCandidates;
+    }
 
-                Arrays.stream(mainSketchCandidateStr.split("\n"))
-                        .filter(line -> ! allImportStatements.contains(line))
-                        .forEachOrdered(sketchClassWithoutImportsJoiner::add);
+    /*
+     * As above, for short-listed tabs read from the conversion cache, by tab name, which are identified from their cached
+     * Java text without being parsed.
+     */
+    public static List<MainSketchCandidate> secondStageMainSketchIdentification(@NotNull Map<String, String> cachedShortlist) {
+        List<MainSketchCandidate> mainSketchCandidates = new ArrayList<>(3);
 
-                mainSketchCandidateStr = sketchClassWithoutImportsJoiner.toString();
-            }
+        for (Map.Entry<String, String> cachedCandidate : cachedShortlist.entrySet()) {
+            SketchTokenScan tokenScan = SketchTokenScan.scan(cachedCandidate.getValue());
 
-            PsiClass unanonymisedSketchClass = elementFactory.createClassFromText(mainSketchCandidateStr, null);
-            unanonymisedSketchClass.setName(ClassNameSuggester.suggest(mainSketchCandidate.getName()));
-
-            Collection<PsiMethod> methodsInClass = PsiTreeUtil.findChildrenOfType(unanonymisedSketchClass, PsiMethod.class);
-
-            if (!methodsInClass.isEmpty()) {
-                methodsInClass.stream()
-                        .filter(method -> method.getParameterList() != null &&
-                                (method.getParameterList().getParameters().length == 0) &&
-                                (method.getName().equals("draw") || method.getName().equals("setup")))
-                        .forEach(processingMethod -> {
-                            if (!processingMethod.getModifierList().hasModifierProperty(PsiModifier.PUBLIC)) {
-                                processingMethod.getModifierList().setModifierProperty(PsiModifier.PUBLIC, true);
-                            }
-
-                            /*
-                                If the class has a draw method, with no parameters, this is probably the PApplet draw method,
-                                Save the class reference to the map of potential main sketch classes.
-                            */
-                            if (processingMethod.getName().equals("draw")) {
-                                PsiImportList sketchImportListCopy = (PsiImportList) sketchImportList.copy();
-
-                                // This is a side effect and it would be best to get rid of it.
-                                mainSketchClasses.put(Pair.create(mainSketchCandidate, unanonymisedSketchClass), sketchImportListCopy);
-                            }
-                        });
+            if (tokenScan.declaresTopLevelMethod("draw")) {
+                mainSketchCandidates.add(new MainSketchCandidate(cachedCandidate.getKey(), cachedCandidate.getValue(), tokenScan));
             }
         }
 
-        return mainSketchClasses;
+        return mainSketchCandidates;
     }
 
 
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.pde_import;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import org.idea.processing.plugin.ProcessingPluginUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+    On-disk cache of converted PDE tabs, shared by all projects. Entries are keyed by a hash of the contents of the tab and the
+    version of the converter, and hold the converted Java text of the tab together with the results of its analysis, so that an
+    unchanged tab can be imported again without being parsed.
+
+    The cache is bounded in size. Entries are touched when read, and the least recently used entries are evicted first.
+ */
+public class PdeConversionCache {
+
+    private final Logger logger = com.intellij.openapi.diagnostic.Logger.getInstance(PdeConversionCache.class);
+
+    private static final String CACHE_DIRECTORY_NAME = "processing-idea/conversion-cache";
+    private static final String ENTRY_EXTENSION = ".bin";
+
+    /*
+        Maximum size of the cache, which may be overridden with the 'processing.conversion.cache.mb' system property.
+     */
+    private static final long MAX_CACHE_BYTES = Long.getLong("processing.conversion.cache.mb", 256) * 1024 * 1024;
+
+    /*
+        Eviction frees space down to this fraction of the maximum size, so that it is not repeated on every write.
+     */
+    private static final double EVICTION_TARGET = 0.8;
+
+    private final File cacheDirectory;
+    private final AtomicLong cacheBytes = new AtomicLong(-1);
+
+    public PdeConversionCache() {
+        this(new File(PathManager.getSystemPath(), CACHE_DIRECTORY_NAME));
+    }
+
+    PdeConversionCache(@NotNull File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public static PdeConversionCache getInstance() {
+        return ServiceManager.getService(PdeConversionCache.class);
+    }
+
+    /*
+        Key of the cache entry for the given tab contents.
+     */
+    @NotNull
+    static String key(@NotNull byte[] pdeContents) {
+        return ProcessingPluginUtil.INSTANCE.sha1(pdeContents) + "-v" + PdeConverter.CONVERTER_VERSION;
+    }
+
+    @Nullable
+    public CachedConversion get(@NotNull String key) {
+        File entryFile = entryFile(key);
+
+        if (! entryFile.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream entryStream = new DataInputStream(new BufferedInputStream(new FileInputStream(entryFile)))) {
+            CachedConversion conversion = CachedConversion.read(entryStream);
+
+            // Touch the entry, so that it is the last to be evicted.
+            if (! entryFile.setLastModified(System.currentTimeMillis())) {
+                logger.debug("Unable to touch the conversion cache entry '" + entryFile + "'.");
+            }
+
+            return conversion;
+        } catch (IOException io) {
+            logger.warn("Discarding the unreadable conversion cache entry '" + entryFile + "'.", io);
+            FileUtil.delete(entryFile);
+            return null;
+        }
+    }
+
+    public void put(@NotNull String key, @NotNull CachedConversion conversion) {
+        if (! FileUtil.createDirectory(cacheDirectory)) {
+            logger.warn("Unable to create the conversion cache directory '" + cacheDirectory + "'.");
+            return;
+        }
+
+        File entryFile = entryFile(key);
+        File temporaryFile = new File(cacheDirectory, key + ".tmp" + Thread.currentThread().getId());
+
+        // Counted before the entry is written, so that neither the new entry nor the one it replaces is counted twice.
+        initialiseCacheBytes();
+        long replacedBytes;
+
+        try {
+            try (DataOutputStream entryStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+                conversion.write(entryStream);
+            }
+
+            // Readers only ever see complete entries.
+            replacedBytes = entryFile.length();
+            FileUtil.rename(temporaryFile, entryFile);
+        } catch (IOException io) {
+            logger.warn("Unable to write the conversion cache entry '" + entryFile + "'.", io);
+            FileUtil.delete(temporaryFile);
+            return;
+        }
+
+        if (cacheBytes.addAndGet(entryFile.length() - replacedBytes) > MAX_CACHE_BYTES) {
+            evictLeastRecentlyUsed();
+        }
+    }
+
+    @NotNull
+    private File entryFile(@NotNull String key) {
+        return new File(cacheDirectory, key + ENTRY_EXTENSION);
+    }
+
+    private void initialiseCacheBytes() {
+        if (cacheBytes.get() < 0) {
+            cacheBytes.compareAndSet(-1, sizeOfEntries(listEntries()));
+        }
+    }
+
+    private synchronized void evictLeastRecentlyUsed() {
+        List<File> entries = listEntries();
+        long remainingBytes = sizeOfEntries(entries);
+
+        if (remainingBytes <= MAX_CACHE_BYTES) {
+            cacheBytes.set(remainingBytes);
+            return;
+        }
+
+        Map<File, Long> lastUsed = new HashMap<>(entries.size());
+        for (File entry : entries) {
+            lastUsed.put(entry, entry.lastModified());
+        }
+
+        entries.sort(Comparator.comparing(lastUsed::get));
+
+        int evicted = 0;
+
+        for (File entry : entries) {
+            if (remainingBytes <= MAX_CACHE_BYTES * EVICTION_TARGET) {
+                break;
+            }
+
+            long entryBytes = entry.length();
+
+            if (FileUtil.delete(entry)) {
+                remainingBytes -= entryBytes;
+                evicted++;
+            }
+        }
+
+        cacheBytes.set(remainingBytes);
+
+        logger.info("Evicted " + evicted + " entries from the conversion cache, which now holds " + remainingBytes + " bytes.");
+    }
+
+    @NotNull
+    private List<File> listEntries() {
+        File[] entries = cacheDirectory.listFiles((directory, name) -> name.endsWith(ENTRY_EXTENSION));
+
+        return entries == null ? new ArrayList<>() : new ArrayList<>(Arrays.asList(entries));
+    }
+
+    private static long sizeOfEntries(@NotNull List<File> entries) {
+        long totalBytes = 0;
+
+        for (File entry : entries) {
+            totalBytes += entry.length();
+        }
+
+        return totalBytes;
+    }
+
+    /**
+        The converted Java text of a tab, and the results of its analysis.
+     */
+    static class CachedConversion {
+        private final String javaText;
+        private final boolean topLevelError;
+        private final Set<String> declaredTypeNames;
+        private final Set<String> referencedTypeNames;
+
+        CachedConversion(@NotNull String javaText, boolean topLevelError, @NotNull Set<String> declaredTypeNames, @NotNull Set<String> referencedTypeNames) {
+            this.javaText = javaText;
+            this.topLevelError = topLevelError;
+            this.declaredTypeNames = declaredTypeNames;
+            this.referencedTypeNames = referencedTypeNames;
+        }
+
+        /*
+            Must be invoked from within a read action.
+         */
+        @NotNull
+        static CachedConversion of(@NotNull SketchFileAnalysis analysis) {
+            return new CachedConversion(analysis.getSketchFile().getText(), analysis.hasTopLevelError(),
+                    new HashSet<>(analysis.getDeclaredTypeNames()), new HashSet<>(analysis.getReferencedTypeNames()));
+        }
+
+        @NotNull
+        String getJavaText() {
+            return javaText;
+        }
+
+        boolean hasTopLevelError() {
+            return topLevelError;
+        }
+
+        @NotNull
+        Set<String> getDeclaredTypeNames() {
+            return declaredTypeNames;
+        }
+
+        @NotNull
+        Set<String> getReferencedTypeNames() {
+            return referencedTypeNames;
+        }
+
+        private void write(@NotNull DataOutputStream out) throws IOException {
+            out.writeInt(PdeConverter.CONVERTER_VERSION);
+            writeString(out, javaText);
+            out.writeBoolean(topLevelError);
+            writeStrings(out, declaredTypeNames);
+            writeStrings(out, referencedTypeNames);
+        }
+
+        @NotNull
+        private static CachedConversion read(@NotNull DataInputStream in) throws IOException {
+            int version = in.readInt();
+
+            if (version != PdeConverter.CONVERTER_VERSION) {
+                throw new IOException("Cache entry was written by converter version " + version + ".");
+            }
+
+            String javaText = readString(in);
+            boolean topLevelError = in.readBoolean();
+
+            return new CachedConversion(javaText, topLevelError, readStrings(in), readStrings(in));
+        }
+
+        /*
+            DataOutputStream.writeUTF is limited to 64KB, which a large tab may well exceed.
+         */
+        private static void writeString(@NotNull DataOutputStream out, @NotNull String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        @NotNull
+        private static String readString(@NotNull DataInputStream in) throws IOException {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static void writeStrings(@NotNull DataOutputStream out, @NotNull Set<String> values) throws IOException {
+            out.writeInt(values.size());
+
+            for (String value : values) {
+                out.writeUTF(value);
+            }
+        }
+
+        @NotNull
+        private static Set<String> readStrings(@NotNull DataInputStream in) throws IOException {
+            int count = in.readInt();
+            Set<String> values = new HashSet<>(count);
+
+            for (int idx = 0; idx < count; idx++) {
+                values.add(in.readUTF());
+            }
+
+            return values;
+        }
+    }
+}
@@ -21,6 +21,9 @@ package org.idea.processing.plugin.pde_import;
 import com.intellij.ide.highlighter.JavaFileType;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.ThrowableComputable;
 import com.intellij.openapi.util.io.FileUtil;
@@ -29,12 +32,14 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiFileFactory;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
 
 /**
     Converts classes of the Processing 'pde' type into valid Java classes.
@@ -43,36 +48,119 @@ class PdeConverter {
 
     private final Logger logger = com.intellij.openapi.diagnostic.Logger.getInstance(PdeConverter.class);
 
+    /*
+        Version of the conversion, i.e. of the preprocessor and of the analysis of converted files. Conversions cached by an
+        earlier version are not reused, so it must be incremented whenever either changes.
+     */
+    static final int CONVERTER_VERSION = 2;
+
+    /*
+        Number of PDE files parsed and held in memory at any one time when parsing in batches.
+     */
+    static final int DEFAULT_BATCH_SIZE = 32;
+
+    /*
+        Interval at which a thread waiting on parsing results checks whether the import has been cancelled.
+     */
+    private static final long CANCELLATION_POLL_INTERVAL_MS = 50;
+
     /*
         Parse all of the given PDE files into a Psi tree, and return the resulting collection of PsiClasses.
      */
     public Collection<PsiFile> parseAll(Project project, @NotNull Collection<VirtualFile> pdeFiles) throws InterruptedException {
+        return parseAll(project, pdeFiles, new EmptyProgressIndicator());
+    }
+
+    /*
+        Parse the given PDE files in batches of at most batchSize files, handing each parsed batch to the consumer.
+        The next batch is not read until the consumer returns, so only a single batch of parsed files is held in memory
+        at any one time, irrespective of the total number of files being parsed.
+
+        Cancelling the given progress indicator cancels any parsing that is in flight, and results in a ProcessCanceledException.
+     */
+    public void parseInBatches(Project project,
+                               @NotNull Collection<VirtualFile> pdeFiles,
+                               int batchSize,
+                               @NotNull ProgressIndicator indicator,
+                               @NotNull Consumer<Collection<PsiFile>> batchConsumer) throws InterruptedException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be a positive number, but was " + batchSize + ".");
+        }
+
+        List<VirtualFile> batch = new ArrayList<>(batchSize);
+
+        for (VirtualFile pdeFile : pdeFiles) {
+            batch.add(pdeFile);
+
+            if (batch.size() == batchSize) {
+                batchConsumer.accept(parseAll(project, batch, indicator));
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+
+        if (! batch.isEmpty()) {
+            batchConsumer.accept(parseAll(project, batch, indicator));
+        }
+
+        logger.info(PdeParsingExecutor.getInstance().getStatistics());
+    }
+
+    private Collection<PsiFile> parseAll(Project project,
+                                         @NotNull Collection<VirtualFile> pdeFiles,
+                                         @NotNull ProgressIndicator indicator) throws InterruptedException {
+        PdeParsingExecutor parsingExecutor = PdeParsingExecutor.getInstance();
+
         Collection<PsiFile> parsed = new ArrayList<>(pdeFiles.size());
 
-        Collection<Callable<PsiFile>> parsingTasks = new ArrayList<>(pdeFiles.size());
+        List<Future<PsiFile>> parsingResults = new ArrayList<>(pdeFiles.size());
 
         for (VirtualFile pdeFile : pdeFiles) {
-            parsingTasks.add(() -> parse(project, pdeFile));
+            parsingResults.add(parsingExecutor.submit(() -> parse(project, pdeFile, indicator)));
         }
 
-        ExecutorService parsingExecutor = Executors.newWorkStealingPool(Runtime.getRuntime().availableProcessors());
+        logger.debug("Submitted " + pdeFiles.size() + " PDE files for parsing; parsing queue depth is " + parsingExecutor.getQueueDepth() + ".");
 
-        List<Future<PsiFile>> parsingResults = parsingExecutor.invokeAll(parsingTasks);
+        try {
+            for (Future<PsiFile> futureParsedClass : parsingResults) {
+                PsiFile parsedClass = awaitParsed(futureParsedClass, indicator);
+
+                if (parsedClass != null) {
+                    parsed.add(parsedClass);
+                }
+            }
+        } finally {
+            // Parsing tasks which have not yet completed are only left over when the import has been cancelled or interrupted.
+            for (Future<PsiFile> futureParsedClass : parsingResults) {
+                futureParsedClass.cancel(true);
+            }
+        }
+
+        return parsed;
+    }
+
+    @Nullable
+    private PsiFile awaitParsed(@NotNull Future<PsiFile> futureParsedClass, @NotNull ProgressIndicator indicator) throws InterruptedException {
+        while (true) {
+            indicator.checkCanceled();
 
-        for (Future<PsiFile> futureParsedClass : parsingResults) {
             try {
-                parsed.add(futureParsedClass.get());
+                return futureParsedClass.get(CANCELLATION_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException te) {
+                // Parsing still in progress. Check for cancellation, and continue waiting.
             } catch (ExecutionException ee) {
+                if (ee.getCause() instanceof ProcessCanceledException) {
+                    throw (ProcessCanceledException) ee.getCause();
+                }
+
                 logger.error(ee);
+                return null;
             }
         }
-
-        parsingExecutor.shutdown();
-
-        return parsed;
     }
 
-    private PsiFile parse(Project project, @NotNull VirtualFile pdeFile) throws IOException {
+    private PsiFile parse(Project project, @NotNull VirtualFile pdeFile, @NotNull ProgressIndicator indicator) throws IOException {
+        indicator.checkCanceled();
+
         return ApplicationManager.getApplication().runReadAction(new ParserComputable(project, pdeFile));
     }
 
@@ -90,7 +178,15 @@ class PdeConverter {
         public PsiFile compute() throws IOException {
             String pdeContents = new String(FileUtil.loadBytes(pdeFile.getInputStream()), CharsetToolkit.UTF8);
 
-            return PsiFileFactory.getInstance(project).createFileFromText(pdeFile.getNameWithoutExtension(), JavaFileType.INSTANCE, pdeContents);
+            // Processing syntax is rewritten to Java, and oversized literal data extracted, before any PSI is built for the file.
+            String javaContents = PdePreprocessor.preprocess(pdeContents);
+            LiteralDataExtraction literalDataExtraction = LiteralDataExtraction.extract(pdeFile.getNameWithoutExtension(), javaContents);
+
+            PsiFile parsedFile = PsiFileFactory.getInstance(project).createFileFromText(pdeFile.getNameWithoutExtension(),
+                    JavaFileType.INSTANCE, literalDataExtraction.getJavaText());
+            literalDataExtraction.attachTo(parsedFile);
+
+            return parsedFile;
         }
     }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.pde_import;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+    Application-wide executor on which PDE files are parsed. Shared across imports, so that repeated imports reuse the same
+    bounded set of threads, rather than each creating and discarding a pool of their own.
+ */
+public class PdeParsingExecutor implements Disposable {
+
+    private final Logger logger = com.intellij.openapi.diagnostic.Logger.getInstance(PdeParsingExecutor.class);
+
+    /*
+        Leave a core free for the event dispatch thread and the IDE's own pools.
+     */
+    private static final int PARSING_THREAD_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+    private static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 60;
+    private static final long TERMINATION_TIMEOUT_SECONDS = 5;
+
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong completedTasks = new AtomicLong();
+    private final AtomicLong totalQueuedNanos = new AtomicLong();
+    private final AtomicLong totalRunningNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public PdeParsingExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+
+        executor = new ThreadPoolExecutor(PARSING_THREAD_COUNT, PARSING_THREAD_COUNT,
+                IDLE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread parsingThread = new Thread(runnable, "Processing PDE Parser " + threadCount.incrementAndGet());
+                    parsingThread.setDaemon(true);
+                    return parsingThread;
+                });
+
+        // Idle parsing threads are released between imports.
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static PdeParsingExecutor getInstance() {
+        return ServiceManager.getService(PdeParsingExecutor.class);
+    }
+
+    /*
+        Submit a parsing task, recording the time the task spends queued and running once it completes.
+     */
+    @NotNull
+    public <T> Future<T> submit(@NotNull Callable<T> task) {
+        final long submittedAt = System.nanoTime();
+
+        return executor.submit(() -> {
+            long startedAt = System.nanoTime();
+
+            try {
+                return task.call();
+            } finally {
+                recordCompletion(submittedAt, startedAt, System.nanoTime());
+            }
+        });
+    }
+
+    /*
+        Number of parsing tasks waiting for a free parsing thread.
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    @NotNull
+    public String getStatistics() {
+        long completed = completedTasks.get();
+
+        if (completed == 0) {
+            return "No PDE files parsed yet; " + PARSING_THREAD_COUNT + " parsing threads, queue depth " + getQueueDepth() + ".";
+        }
+
+        return completed + " PDE files parsed on " + PARSING_THREAD_COUNT + " threads; queue depth " + getQueueDepth() +
+                ", active " + executor.getActiveCount() +
+                ", mean wait " + TimeUnit.NANOSECONDS.toMillis(totalQueuedNanos.get() / completed) + "ms" +
+                ", mean parse " + TimeUnit.NANOSECONDS.toMillis(totalRunningNanos.get() / completed) + "ms" +
+                ", max latency " + TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.get()) + "ms.";
+    }
+
+    private void recordCompletion(long submittedAt, long startedAt, long completedAt) {
+        completedTasks.incrementAndGet();
+        totalQueuedNanos.addAndGet(startedAt - submittedAt);
+        totalRunningNanos.addAndGet(completedAt - startedAt);
+
+        long latency = completedAt - submittedAt;
+        long previousMax;
+        do {
+            previousMax = maxLatencyNanos.get();
+        } while (latency > previousMax && ! maxLatencyNanos.compareAndSet(previousMax, latency));
+    }
+
+    @Override
+    public void dispose() {
+        executor.shutdownNow();
+
+        try {
+            if (! executor.awaitTermination(TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("PDE parsing threads did not terminate within " + TERMINATION_TIMEOUT_SECONDS + " seconds of shutdown.");
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.pde_import;
+
+import com.intellij.lang.java.JavaParserDefinition;
+import com.intellij.lexer.Lexer;
+import com.intellij.pom.java.LanguageLevel;
+import com.intellij.psi.JavaTokenType;
+import com.intellij.psi.TokenType;
+import com.intellij.psi.impl.source.tree.ElementType;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+    Rewrites Processing syntax that is not valid Java in a single pass over the tokens of a PDE file, before the file is parsed:
+
+    - the 'color' type becomes 'int';
+    - the conversion functions int(), float(), boolean(), byte() and char() become calls to the PApplet parse methods;
+    - floating point literals without a suffix become float literals;
+    - web color literals, such as #FF8800, become opaque hexadecimal integer literals, such as 0xFFFF8800.
+
+    The text of comments and string literals is left untouched.
+ */
+final class PdePreprocessor {
+
+    private static final String COLOR_TYPE = "color";
+    private static final int WEB_COLOR_DIGITS = 6;
+
+    private static final Map<IElementType, String> CONVERSION_FUNCTIONS = new HashMap<>();
+
+    static {
+        CONVERSION_FUNCTIONS.put(JavaTokenType.INT_KEYWORD, "processing.core.PApplet.parseInt");
+        CONVERSION_FUNCTIONS.put(JavaTokenType.FLOAT_KEYWORD, "processing.core.PApplet.parseFloat");
+        CONVERSION_FUNCTIONS.put(JavaTokenType.BOOLEAN_KEYWORD, "processing.core.PApplet.parseBoolean");
+        CONVERSION_FUNCTIONS.put(JavaTokenType.BYTE_KEYWORD, "processing.core.PApplet.parseByte");
+        CONVERSION_FUNCTIONS.put(JavaTokenType.CHAR_KEYWORD, "processing.core.PApplet.parseChar");
+    }
+
+    private PdePreprocessor() {}
+
+    @NotNull
+    static String preprocess(@NotNull CharSequence pdeText) {
+        List<Token> tokens = significantTokens(pdeText);
+        StringBuilder javaText = new StringBuilder(pdeText.length() + 64);
+
+        int copiedUpTo = 0;
+
+        for (int idx = 0; idx < tokens.size(); idx++) {
+            Token token = tokens.get(idx);
+
+            // The token was consumed by a preceding rewrite.
+            if (token.start < copiedUpTo) {
+                continue;
+            }
+
+            Token previous = idx > 0 ? tokens.get(idx - 1) : null;
+            Token next = idx + 1 < tokens.size() ? tokens.get(idx + 1) : null;
+
+            String replacement = null;
+            int replacedUpTo = token.end;
+
+            if (token.type == TokenType.BAD_CHARACTER && pdeText.charAt(token.start) == '#') {
+                int webColorEnd = token.end + WEB_COLOR_DIGITS;
+
+                if (isWebColor(pdeText, token.end)) {
+                    replacement = "0xFF" + pdeText.subSequence(token.end, webColorEnd).toString().toUpperCase();
+                    replacedUpTo = webColorEnd;
+                }
+            } else if (token.type == JavaTokenType.IDENTIFIER && ! isQualified(previous) && isColorType(pdeText, token, previous, next)) {
+                replacement = "int";
+            } else if (CONVERSION_FUNCTIONS.containsKey(token.type) && ! isQualified(previous) && is(next, JavaTokenType.LPARENTH)) {
+                replacement = CONVERSION_FUNCTIONS.get(token.type);
+            } else if (token.type == JavaTokenType.DOUBLE_LITERAL && ! hasDoubleSuffix(pdeText, token)) {
+                replacement = pdeText.subSequence(token.start, token.end) + "f";
+            }
+
+            if (replacement != null) {
+                javaText.append(pdeText, copiedUpTo, token.start).append(replacement);
+                copiedUpTo = replacedUpTo;
+            }
+        }
+
+        javaText.append(pdeText, copiedUpTo, pdeText.length());
+
+        return javaText.toString();
+    }
+
+    /*
+        'color' is a type where it declares a variable or array, 'color c' or 'color[] c', or is the type of a cast, '(color) c'.
+        Elsewhere, such as in a call to the color() function, it is left as it is.
+     */
+    private static boolean isColorType(@NotNull CharSequence pdeText, @NotNull Token token, @Nullable Token previous, @Nullable Token next) {
+        if (token.end - token.start != COLOR_TYPE.length() || ! COLOR_TYPE.contentEquals(pdeText.subSequence(token.start, token.end))) {
+            return false;
+        }
+
+        return is(next, JavaTokenType.IDENTIFIER) || is(next, JavaTokenType.LBRACKET)
+                || (is(previous, JavaTokenType.LPARENTH) && is(next, JavaTokenType.RPARENTH));
+    }
+
+    /*
+        Six hexadecimal digits, not followed by further characters of an identifier.
+     */
+    private static boolean isWebColor(@NotNull CharSequence pdeText, int digitsStart) {
+        int digitsEnd = digitsStart + WEB_COLOR_DIGITS;
+
+        if (digitsEnd > pdeText.length()) {
+            return false;
+        }
+
+        for (int idx = digitsStart; idx < digitsEnd; idx++) {
+            if (Character.digit(pdeText.charAt(idx), 16) < 0) {
+                return false;
+            }
+        }
+
+        return digitsEnd == pdeText.length() || ! Character.isJavaIdentifierPart(pdeText.charAt(digitsEnd));
+    }
+
+    private static boolean hasDoubleSuffix(@NotNull CharSequence pdeText, @NotNull Token token) {
+        char lastCharacter = pdeText.charAt(token.end - 1);
+        return lastCharacter == 'd' || lastCharacter == 'D';
+    }
+
+    private static boolean isQualified(@Nullable Token previous) {
+        return is(previous, JavaTokenType.DOT);
+    }
+
+    private static boolean is(@Nullable Token token, @NotNull IElementType type) {
+        return token != null && token.type == type;
+    }
+
+    /*
+        The tokens of the text, without comments and whitespace.
+     */
+    @NotNull
+    static List<Token> significantTokens(@NotNull CharSequence pdeText) {
+        List<Token> tokens = new ArrayList<>(pdeText.length() / 4);
+
+        Lexer lexer = JavaParserDefinition.createLexer(LanguageLevel.HIGHEST);
+        lexer.start(pdeText);
+
+        for (IElementType token = lexer.getTokenType(); token != null; lexer.advance(), token = lexer.getTokenType()) {
+            if (! ElementType.JAVA_COMMENT_OR_WHITESPACE_BIT_SET.contains(token)) {
+                tokens.add(new Token(token, lexer.getTokenStart(), lexer.getTokenEnd()));
+            }
+        }
+
+        return tokens;
+    }
+
+    static final class Token {
+        final IElementType type;
+        final int start;
+        final int end;
+
+        private Token(@NotNull IElementType type, int start, int end) {
+            this.type = type;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
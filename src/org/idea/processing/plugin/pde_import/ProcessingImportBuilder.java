@@ -19,23 +19,30 @@
 package org.idea.processing.plugin.pde_import;
 
 import com.intellij.icons.AllIcons;
+import com.intellij.ide.highlighter.ModuleFileType;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.ModifiableModuleModel;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleManager;
 import com.intellij.openapi.options.ConfigurationException;
-import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.ui.configuration.ModulesProvider;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.packaging.artifacts.ModifiableArtifactModel;
 import com.intellij.projectImport.ProjectImportBuilder;
+import com.intellij.util.PathUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.idea.processing.plugin.project_creation.ProcessingModuleBuilder;
+import org.idea.processing.plugin.project_creation.RunnableActionUtils;
 
 import javax.swing.*;
+import java.io.File;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ProcessingImportBuilder extends ProjectImportBuilder<String> {
 
@@ -43,10 +50,17 @@ public class ProcessingImportBuilder extends ProjectImportBuilder<String> {
         public String root;
         public String projectCreationRoot;
         public Collection<VirtualFile> importablePdeFiles;
+        public Collection<VirtualFile> importableJavaFiles = Collections.emptyList();
         public VirtualFile resourceDirectoryPath;
         public List<String> workspace;
         public List<String> projectsToConvert = new ArrayList<>();
         public boolean openModuleSettings;
+        public boolean syncWithSketchDirectory;
+        public boolean reformatImportedSources = true;
+        public boolean linkSketchResources;
+        public boolean validateConvertedSources;
+        /* Class path of the in-memory compile check, where it is not that of the module the sketch is imported into. */
+        public String compileCheckClassPath;
         public Set<String> existingModuleNames;
     }
 
@@ -103,6 +117,10 @@ public class ProcessingImportBuilder extends ProjectImportBuilder<String> {
                                ModulesProvider modulesProvider,
                                ModifiableArtifactModel modifiableArtifactModel) {
 
+        if (isSketchbookImport()) {
+            return commitSketchbook(project, modifiableModuleModel);
+        }
+
         logger.debug("Initializing module builder instance.");
         ProcessingModuleBuilder processingModuleBuilder = new ProcessingModuleBuilder();
         processingModuleBuilder.setGenerateTemplateSketchClass(false);
@@ -111,16 +129,102 @@ public class ProcessingImportBuilder extends ProjectImportBuilder<String> {
 
         List<Module> modules = processingModuleBuilder.commit(project, modifiableModuleModel, modulesProvider);
 
-        Collection<VirtualFile> importablePdeFiles = new LinkedList<>(getParameters().importablePdeFiles);
+        logger.info("Identified a total of " + getParameters().importablePdeFiles.size() + " PDE files for import from '" + getParameters().root + "'.");
+
+        ImportSketchClasses importSketchClasses = new ImportSketchClasses(this, project, modules, getParameters());
+
+        RunnableActionUtils.runWhenInitialized(project, () -> ProgressManager.getInstance().run(importSketchClasses));
+
+        return modules;
+    }
+
+    /*
+        A sketchbook import is one in which the selected root has no PDE files of its own, but sketch folders below it.
+     */
+    private boolean isSketchbookImport() {
+        return getParameters().importablePdeFiles.isEmpty() && ! getParameters().projectsToConvert.isEmpty();
+    }
+
+    /*
+        Create a module for each selected sketch folder, attach the Processing library to all of them at once, and convert
+        the sketches in a single background task.
+     */
+    @NotNull
+    private List<Module> commitSketchbook(@NotNull Project project, @Nullable ModifiableModuleModel modifiableModuleModel) {
+        Parameters sketchbookParameters = getParameters();
+
+        logger.info("Importing a sketchbook of " + sketchbookParameters.projectsToConvert.size() + " sketches from '" + sketchbookParameters.root + "'.");
+
+        List<Module> modules = new ArrayList<>(sketchbookParameters.projectsToConvert.size());
+        List<ImportSketchClasses> sketchImports = new ArrayList<>(sketchbookParameters.projectsToConvert.size());
+        Set<String> moduleNames = new HashSet<>(sketchbookParameters.existingModuleNames);
+
+        // The sketch folders are scanned off the event dispatch thread, as they may be on a slow file system.
+        Map<String, SketchFolderScan> sketchScans = new ConcurrentHashMap<>();
+        ProgressManager.getInstance().runProcessWithProgressSynchronously(() -> {
+            for (String sketchRoot : sketchbookParameters.projectsToConvert) {
+                sketchScans.put(sketchRoot, SketchFolderScan.scan(sketchRoot));
+            }
+        }, "Scanning Sketch Folders", false, project);
+
+        for (String sketchRoot : sketchbookParameters.projectsToConvert) {
+            String moduleName = ImportSketchbook.uniqueModuleName(PathUtil.getFileName(sketchRoot), moduleNames);
+            String moduleContentRoot = Paths.get(sketchbookParameters.projectCreationRoot, moduleName).toString();
+
+            if (! FileUtil.createDirectory(new File(moduleContentRoot))) {
+                logger.warn("Unable to create the module directory '" + moduleContentRoot + "'. The sketch at '" + sketchRoot + "' will not be imported.");
+                continue;
+            }
+
+            ProcessingModuleBuilder sketchModuleBuilder = new ProcessingModuleBuilder();
+            sketchModuleBuilder.setGenerateTemplateSketchClass(false);
+            sketchModuleBuilder.setName(moduleName);
+            sketchModuleBuilder.setContentEntryPath(moduleContentRoot);
+            sketchModuleBuilder.setModuleFilePath(Paths.get(moduleContentRoot, moduleName + ModuleFileType.DOT_DEFAULT_EXTENSION).toString());
 
-        logger.info("Identified a total of " + importablePdeFiles.size() + " PDE files for import from '" + getParameters().root + "'.");
+            Module sketchModule = sketchModuleBuilder.commitModule(project, modifiableModuleModel);
 
-        ImportSketchClasses importSketchClasses = new ImportSketchClasses(this, project, modules, importablePdeFiles);
-        DumbService.getInstance(project).smartInvokeLater(importSketchClasses);
+            if (sketchModule == null) {
+                logger.warn("Unable to create a module for the sketch at '" + sketchRoot + "'. The sketch will not be imported.");
+                continue;
+            }
+
+            modules.add(sketchModule);
+            sketchImports.add(new ImportSketchClasses(null, project, Collections.singletonList(sketchModule), createSketchParameters(sketchScans.get(sketchRoot))));
+        }
+
+        if (! modules.isEmpty()) {
+            new ProcessingModuleBuilder().attachProcessingLibrary(project, modules);
+        }
+
+        ImportSketchbook importSketchbook = new ImportSketchbook(this, project, sketchImports,
+                ImportSketchbook.defaultThreadCount(getParameters().validateConvertedSources));
+
+        RunnableActionUtils.runWhenInitialized(project, () -> ProgressManager.getInstance().run(importSketchbook));
 
         return modules;
     }
 
+    /*
+        Import parameters for a single sketch of the sketchbook. Synchronisation with the sketch directory is tracked for one
+        sketch per project, so it is not enabled for sketchbook imports.
+     */
+    @NotNull
+    private Parameters createSketchParameters(@NotNull SketchFolderScan sketchScan) {
+        Parameters sketchParameters = new Parameters();
+        sketchParameters.root = sketchScan.getRoot();
+        sketchParameters.projectCreationRoot = getParameters().projectCreationRoot;
+        sketchParameters.importablePdeFiles = sketchScan.getPdeFiles();
+        sketchParameters.importableJavaFiles = sketchScan.getJavaFiles();
+        sketchParameters.resourceDirectoryPath = sketchScan.getDataDirectory();
+        sketchParameters.reformatImportedSources = getParameters().reformatImportedSources;
+        sketchParameters.linkSketchResources = getParameters().linkSketchResources;
+        sketchParameters.validateConvertedSources = getParameters().validateConvertedSources;
+        sketchParameters.syncWithSketchDirectory = false;
+
+        return sketchParameters;
+    }
+
     @Nullable
     public String getRootDirectory() {
         return getParameters().root;
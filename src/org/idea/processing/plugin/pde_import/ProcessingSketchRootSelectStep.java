@@ -20,29 +20,28 @@ package org.idea.processing.plugin.pde_import;
 
 import com.intellij.ide.impl.ProjectUtil;
 import com.intellij.ide.util.projectWizard.WizardContext;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.fileChooser.FileChooserDescriptor;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.ui.TextFieldWithBrowseButton;
-import com.intellij.openapi.util.io.FileUtil;
-import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.openapi.vfs.VirtualFileVisitor;
 import com.intellij.projectImport.ProjectImportWizardStep;
 import com.intellij.ui.DocumentAdapter;
 import com.intellij.ui.JBColor;
+import com.intellij.util.Alarm;
 import com.intellij.util.PathUtil;
-import org.idea.processing.plugin.ProcessingPluginUtil;
 import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import java.awt.event.ItemEvent;
 import java.nio.file.Paths;
-import java.util.Collection;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.StringJoiner;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.function.Predicate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ProcessingSketchRootSelectStep extends ProjectImportWizardStep {
 
@@ -56,9 +55,24 @@ public class ProcessingSketchRootSelectStep extends ProjectImportWizardStep {
     private JRadioButton importProjectIntoCustomRootOption;
     private TextFieldWithBrowseButton customImportRootDirectoryBrowser;
     private JTextField projectCreationPathPreviewTextField;
+    private JCheckBox syncWithSketchDirectoryOption;
+    private JCheckBox reformatImportedSourcesOption;
+    private JCheckBox linkSketchResourcesOption;
+    private JCheckBox validateConvertedSourcesOption;
 
     private ProcessingImportBuilder.Parameters importParameters;
 
+    /*
+        The sketch folder is scanned once the path has not changed for a short while, off the event dispatch thread.
+        Scans are cached by path, so returning to a path, or moving to the next step, does not scan the folder again unless it
+        has changed since it was scanned.
+     */
+    private static final int SKETCH_FOLDER_SCAN_DELAY_MILLIS = 300;
+
+    private final Disposable scanDisposable = Disposer.newDisposable();
+    private final Alarm sketchFolderScanAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, scanDisposable);
+    private final Map<String, SketchFolderScan> sketchFolderScans = new ConcurrentHashMap<>();
+
     private final List<JRadioButton> projectCreationRootOptionButtonGroup = new LinkedList<>();
 
     private final FileChooserDescriptor DIRECTORY_CHOOSER_DESCRIPTOR = new FileChooserDescriptor(false, true, false, false, false, false)
@@ -85,9 +99,8 @@ public class ProcessingSketchRootSelectStep extends ProjectImportWizardStep {
         projectRootDirectoryBrowser.getTextField().getDocument().addDocumentListener(new DocumentAdapter() {
             @Override
             public void textChanged(DocumentEvent event) {
-                updateDataModel();
-                refreshPdeFileImportPreview();
                 refreshProjectCreationPreview();
+                scheduleSketchFolderScan();
             }
         });
 
@@ -98,6 +111,10 @@ public class ProcessingSketchRootSelectStep extends ProjectImportWizardStep {
             }
         });
 
+        if (! projectRootDirectoryBrowser.getText().isEmpty()) {
+            scheduleSketchFolderScan();
+        }
+
         return importPanel;
     }
 
@@ -141,36 +158,29 @@ public class ProcessingSketchRootSelectStep extends ProjectImportWizardStep {
         }
 
         getParameters().root = projectRootDirectoryBrowser.getText();
-        getParameters().importablePdeFiles = ProcessingPluginUtil.INSTANCE.filterFilesAtRoot(projectRootDirectoryBrowser.getText(), isPdeFile());
-
-        Collection<VirtualFile> dataDirectoryResults = ProcessingPluginUtil.INSTANCE.filterFilesAtRoot(projectRootDirectoryBrowser.getText(), vfsPath -> vfsPath.isDirectory() && vfsPath.getName().equals("data"));
-
-        if (! dataDirectoryResults.isEmpty()) {
-            VirtualFile dataDirectory = dataDirectoryResults.iterator().next();
-
-            final AtomicBoolean dataDirectoryHasFiles = new AtomicBoolean(false);
-            VfsUtil.visitChildrenRecursively(dataDirectory, new VirtualFileVisitor() {
-                @Override
-                public boolean visitFile(@NotNull VirtualFile file) {
-                    if (dataDirectoryHasFiles.get()) {
-                        return false;
-                    }
-
-                    if (!file.isDirectory()) {
-                        dataDirectoryHasFiles.set(true);
-                        return false;
-                    }
-
-                    return true;
-                }
-            });
+        getParameters().syncWithSketchDirectory = syncWithSketchDirectoryOption.isSelected();
+        getParameters().reformatImportedSources = reformatImportedSourcesOption.isSelected();
+        getParameters().linkSketchResources = linkSketchResourcesOption.isSelected();
+        getParameters().validateConvertedSources = validateConvertedSourcesOption.isSelected();
+
+        /*
+            The folder may not have been scanned yet, if the step is left within the scan delay, or may have changed since. The
+            scan is never run on the event dispatch thread: if it is needed here, it is run under a modal progress.
+         */
+        String sketchRoot = projectRootDirectoryBrowser.getText();
+        Ref<SketchFolderScan> sketchFolderScan = Ref.create();
+
+        sketchFolderScanAlarm.cancelAllRequests();
+        ProgressManager.getInstance().runProcessWithProgressSynchronously(
+                () -> sketchFolderScan.set(getSketchFolderScan(sketchRoot)), "Scanning Sketch Folder", false, null, importPanel);
+
+        applySketchFolderScan(sketchFolderScan.get());
+    }
 
-            if (dataDirectoryHasFiles.get()) {
-                getParameters().resourceDirectoryPath = dataDirectory;
-            }
-        } else {
-            getParameters().resourceDirectoryPath = null;
-        }
+    @Override
+    public void disposeUIResources() {
+        Disposer.dispose(scanDisposable);
+        super.disposeUIResources();
     }
 
     @NotNull
@@ -182,10 +192,64 @@ public class ProcessingSketchRootSelectStep extends ProjectImportWizardStep {
         return importParameters;
     }
 
-    private void refreshPdeFileImportPreview() {
-        if (! getParameters().importablePdeFiles.isEmpty()) {
+    /*
+        Must not be invoked on the event dispatch thread.
+     */
+    @NotNull
+    private SketchFolderScan getSketchFolderScan(@NotNull String sketchRoot) {
+        SketchFolderScan cachedScan = sketchFolderScans.get(sketchRoot);
+
+        if (cachedScan != null && cachedScan.getModificationStamp() == SketchFolderScan.modificationStamp(sketchRoot)) {
+            return cachedScan;
+        }
+
+        SketchFolderScan sketchFolderScan = SketchFolderScan.scan(sketchRoot);
+        sketchFolderScans.put(sketchRoot, sketchFolderScan);
+
+        return sketchFolderScan;
+    }
+
+    private void scheduleSketchFolderScan() {
+        final String sketchRoot = projectRootDirectoryBrowser.getText();
+
+        filesDetectedLabel.setForeground(JBColor.GRAY);
+        filesDetectedLabel.setText("Scanning...");
+
+        sketchFolderScanAlarm.cancelAllRequests();
+        sketchFolderScanAlarm.addRequest(() -> {
+            SketchFolderScan sketchFolderScan = getSketchFolderScan(sketchRoot);
+
+            ApplicationManager.getApplication().invokeLater(() -> {
+                // The path may have changed again whilst the folder was being scanned.
+                if (sketchRoot.equals(projectRootDirectoryBrowser.getText())) {
+                    applySketchFolderScan(sketchFolderScan);
+                    refreshPdeFileImportPreview(sketchFolderScan);
+                }
+            }, ModalityState.stateForComponent(importPanel));
+        }, SKETCH_FOLDER_SCAN_DELAY_MILLIS);
+    }
+
+    private void applySketchFolderScan(@NotNull SketchFolderScan sketchFolderScan) {
+        getParameters().importablePdeFiles = sketchFolderScan.getPdeFiles();
+        getParameters().importableJavaFiles = sketchFolderScan.getJavaFiles();
+        getParameters().resourceDirectoryPath = sketchFolderScan.getDataDirectory();
+
+        /*
+            A root without PDE files of its own is treated as a sketchbook: each of its sketch folders is imported as a module.
+         */
+        getParameters().workspace = new ArrayList<>(sketchFolderScan.getSketchFolders());
+        getParameters().projectsToConvert = new ArrayList<>(getParameters().workspace);
+    }
+
+    private void refreshPdeFileImportPreview(@NotNull SketchFolderScan sketchFolderScan) {
+        if (! getParameters().projectsToConvert.isEmpty()) {
+            filesDetectedLabel.setForeground(JBColor.BLACK);
+            filesDetectedLabel.setText(sketchFolderScan.getSummary());
+
+            importableClassesListTextArea.setText(String.join("\n", getParameters().projectsToConvert));
+        } else if (! getParameters().importablePdeFiles.isEmpty()) {
             filesDetectedLabel.setForeground(JBColor.BLACK);
-            filesDetectedLabel.setText(getParameters().importablePdeFiles.size() + " PDE files");
+            filesDetectedLabel.setText(sketchFolderScan.getSummary());
 
             StringJoiner importablePdeFilePaths = new StringJoiner("\n");
 
@@ -193,6 +257,10 @@ public class ProcessingSketchRootSelectStep extends ProjectImportWizardStep {
                 importablePdeFilePaths.add(importablePdeFile.getPath());
             }
 
+            for (VirtualFile importableJavaFile : getParameters().importableJavaFiles) {
+                importablePdeFilePaths.add(importableJavaFile.getPath());
+            }
+
             importableClassesListTextArea.setText(importablePdeFilePaths.toString());
         } else {
             importableClassesListTextArea.setText("No sketch classes were found at this root directory.");
@@ -219,8 +287,4 @@ public class ProcessingSketchRootSelectStep extends ProjectImportWizardStep {
 
         return "";
     }
-
-    private Predicate<VirtualFile> isPdeFile() {
-        return vfsPath -> FileUtil.getExtension(vfsPath.getPath()).equals("pde");
-    }
 }
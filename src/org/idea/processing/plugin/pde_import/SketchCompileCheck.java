@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.pde_import;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.tools.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+    Compiles the converted sources of a sketch in memory, against the Processing library, so that a conversion that does not
+    compile is reported for each of its tabs before anything is written to the project. Class files are discarded.
+
+    Each check compiles a single sketch on the calling thread; checks of several sketches may run concurrently.
+ */
+class SketchCompileCheck {
+
+    private final Logger logger = com.intellij.openapi.diagnostic.Logger.getInstance(SketchCompileCheck.class);
+
+    /* Errors reported without a source are recorded against this name. */
+    private static final String SKETCH_WIDE_ERRORS = "(sketch)";
+
+    private static final int MAX_ERRORS_PER_TAB = 3;
+
+    private final JavaCompiler compiler;
+    private final String classPath;
+
+    private SketchCompileCheck(@NotNull JavaCompiler compiler, @NotNull String classPath) {
+        this.compiler = compiler;
+        this.classPath = classPath;
+    }
+
+    /*
+        A compile check against the given class path, or null where the IDE does not run with a Java compiler.
+     */
+    @Nullable
+    static SketchCompileCheck create(@NotNull String classPath) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        return compiler == null ? null : new SketchCompileCheck(compiler, classPath);
+    }
+
+    /*
+        Compile the given sketch texts, keyed by tab name, each of which must declare the given package. Returns the first
+        few errors of each tab that does not compile, keyed by tab name, or an empty map where the sketch compiles.
+     */
+    @NotNull
+    Map<String, List<String>> compile(@NotNull String packageName, @NotNull Map<String, String> sketchTexts) {
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        List<JavaFileObject> sketchSources = new ArrayList<>(sketchTexts.size());
+
+        for (Map.Entry<String, String> sketchText : sketchTexts.entrySet()) {
+            sketchSources.add(new SketchSource(packageName, sketchText.getKey(), sketchText.getValue()));
+        }
+
+        List<String> options = Arrays.asList("-classpath", classPath, "-source", "1.8", "-target", "1.8",
+                "-encoding", StandardCharsets.UTF_8.name(), "-proc:none", "-nowarn", "-g:none");
+
+        long startTime = System.currentTimeMillis();
+
+        try (StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(diagnostics, Locale.ENGLISH, StandardCharsets.UTF_8);
+             JavaFileManager discardingFileManager = new DiscardingFileManager(standardFileManager)) {
+            compiler.getTask(null, discardingFileManager, diagnostics, options, null, sketchSources).call();
+        } catch (IOException io) {
+            logger.warn("Unable to release the compiler file manager.", io);
+        }
+
+        Map<String, List<String>> errorsByTab = new TreeMap<>();
+
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() != Diagnostic.Kind.ERROR) {
+                continue;
+            }
+
+            String tabName = diagnostic.getSource() instanceof SketchSource ? ((SketchSource) diagnostic.getSource()).tabName : SKETCH_WIDE_ERRORS;
+            List<String> tabErrors = errorsByTab.computeIfAbsent(tabName, name -> new ArrayList<>(MAX_ERRORS_PER_TAB));
+
+            if (tabErrors.size() < MAX_ERRORS_PER_TAB) {
+                tabErrors.add("line " + diagnostic.getLineNumber() + ": " + diagnostic.getMessage(Locale.ENGLISH));
+            }
+        }
+
+        logger.info("Compiled " + sketchTexts.size() + " converted sources in " + (System.currentTimeMillis() - startTime) + "ms; "
+                + errorsByTab.size() + " tabs failed to compile.");
+
+        return errorsByTab;
+    }
+
+    /*
+        Raised where the converted sources of a sketch do not compile, in which case none of them have been written.
+     */
+    static class CompileCheckFailedException extends RuntimeException {
+        private final Map<String, List<String>> errorsByTab;
+
+        CompileCheckFailedException(@NotNull String sketchName, @NotNull Map<String, List<String>> errorsByTab) {
+            super(errorsByTab.size() + " tabs of the sketch '" + sketchName + "' do not compile once converted: " + String.join(", ", errorsByTab.keySet()));
+            this.errorsByTab = errorsByTab;
+        }
+
+        /*
+            The errors of each tab, one tab per line.
+         */
+        @NotNull
+        String describeErrors() {
+            StringJoiner description = new StringJoiner("\n");
+
+            for (Map.Entry<String, List<String>> tabErrors : errorsByTab.entrySet()) {
+                description.add(tabErrors.getKey() + ": " + String.join("; ", tabErrors.getValue()));
+            }
+
+            return description.toString();
+        }
+    }
+
+    private static class SketchSource extends SimpleJavaFileObject {
+        private final String tabName;
+        private final String text;
+
+        private SketchSource(@NotNull String packageName, @NotNull String tabName, @NotNull String text) {
+            super(URI.create("string:///" + packageName.replace('.', '/') + "/" + tabName.replace(' ', '_') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.tabName = tabName;
+            this.text = text;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return text;
+        }
+    }
+
+    /*
+        Class files are written nowhere; only the diagnostics of the compilation are of interest.
+     */
+    private static class DiscardingFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+        private DiscardingFileManager(@NotNull StandardJavaFileManager fileManager) {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+            return new SimpleJavaFileObject(URI.create("discarded:///" + className.replace('.', '/') + kind.extension), kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    return new OutputStream() {
+                        @Override
+                        public void write(int b) {
+                        }
+
+                        @Override
+                        public void write(@NotNull byte[] b, int off, int len) {
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.pde_import;
+
+import com.intellij.psi.*;
+import com.intellij.psi.util.PsiTreeUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+    The elements of a parsed sketch file that are of interest to the import, collected in a single walk of the file.
+ */
+class SketchFileAnalysis {
+
+    private final PsiFile sketchFile;
+
+    private boolean hasError;
+    private boolean hasTopLevelError;
+    private PsiImportList importList;
+    private final Set<String> declaredTypeNames = new HashSet<>();
+    private final Set<String> referencedTypeNames = new HashSet<>();
+    private final Set<String> importedNames = new HashSet<>();
+
+    private SketchFileAnalysis(@NotNull PsiFile sketchFile) {
+        this.sketchFile = sketchFile;
+    }
+
+    /*
+        Must be invoked from within a read action.
+     */
+    @NotNull
+    public static SketchFileAnalysis analyze(@NotNull PsiFile sketchFile) {
+        SketchFileAnalysis analysis = new SketchFileAnalysis(sketchFile);
+        sketchFile.accept(analysis.new Collector());
+
+        return analysis;
+    }
+
+    @NotNull
+    public PsiFile getSketchFile() {
+        return sketchFile;
+    }
+
+    /*
+        A sketch file whose first error is not contained by a class declares fields or methods outside of a class.
+        Only the main sketch file of a PDE sketch is expected to do so.
+     */
+    public boolean hasTopLevelError() {
+        return hasTopLevelError;
+    }
+
+    @Nullable
+    public PsiImportList getImportList() {
+        return importList;
+    }
+
+    /*
+        Names of the classes, interfaces and enums declared in the file.
+     */
+    @NotNull
+    public Set<String> getDeclaredTypeNames() {
+        return declaredTypeNames;
+    }
+
+    /*
+        Identifiers in the file that may name a type, i.e. those beginning with an upper case letter. Identifiers are taken from
+        the tokens of the file, so that references made from code outside of a class, which is not parsed into references, are
+        included.
+     */
+    @NotNull
+    public Set<String> getReferencedTypeNames() {
+        return referencedTypeNames;
+    }
+
+    /*
+        Qualified names imported by the file: those of imported classes and statically imported members, and of packages
+        imported on demand.
+     */
+    @NotNull
+    public Set<String> getImportedNames() {
+        return importedNames;
+    }
+
+    private class Collector extends JavaRecursiveElementWalkingVisitor {
+
+        @Override
+        public void visitClass(PsiClass aClass) {
+            if (aClass.getName() != null) {
+                declaredTypeNames.add(aClass.getName());
+            }
+
+            super.visitClass(aClass);
+        }
+
+        @Override
+        public void visitIdentifier(PsiIdentifier identifier) {
+            String name = identifier.getText();
+
+            if (! name.isEmpty() && Character.isUpperCase(name.charAt(0)) && ! (identifier.getParent() instanceof PsiClass)) {
+                referencedTypeNames.add(name);
+            }
+        }
+
+        @Override
+        public void visitErrorElement(PsiErrorElement element) {
+            if (! hasError) {
+                hasError = true;
+                // Resolved here, whilst the walk holds the read lock, rather than when the flag is read.
+                hasTopLevelError = PsiTreeUtil.getParentOfType(element, PsiClass.class) == null;
+            }
+
+            super.visitErrorElement(element);
+        }
+
+        @Override
+        public void visitImportList(PsiImportList list) {
+            if (importList == null) {
+                importList = list;
+
+                for (PsiImportStatementBase importStatement : list.getAllImportStatements()) {
+                    PsiJavaCodeReferenceElement importReference = importStatement.getImportReference();
+
+                    if (importReference != null && importReference.getQualifiedName() != null) {
+                        importedNames.add(importReference.getQualifiedName());
+                    }
+                }
+            }
+
+            // Nothing of interest is nested within the import list.
+        }
+    }
+}
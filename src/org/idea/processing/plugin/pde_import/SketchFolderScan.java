@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.pde_import;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+    The contents of a sketch folder, or of a sketchbook of sketch folders, gathered in a single walk of the folder: its PDE and
+    Java tabs, its data directory and the assets within it, and the sketch folders directly below it.
+ */
+class SketchFolderScan {
+
+    private static final Logger logger = com.intellij.openapi.diagnostic.Logger.getInstance(SketchFolderScan.class);
+
+    private static final String DATA_DIRECTORY_NAME = "data";
+
+    private final String root;
+    private final List<VirtualFile> pdeFiles = new ArrayList<>();
+    private final List<VirtualFile> javaFiles = new ArrayList<>();
+    private final List<String> sketchFolders = new ArrayList<>();
+
+    private long modificationStamp;
+    private VirtualFile dataDirectory;
+    private long pdeBytes;
+    private int dataFileCount;
+    private long dataBytes;
+
+    private SketchFolderScan(@NotNull String root) {
+        this.root = root;
+    }
+
+    /*
+        Must not be invoked on the event dispatch thread, nor from within a read action. The folder is walked on disk, so that
+        no lock is held however slow the file system; only the files that are to be imported are then looked up in the VFS.
+     */
+    @NotNull
+    static SketchFolderScan scan(@NotNull String root) {
+        SketchFolderScan scan = new SketchFolderScan(root);
+        Path rootDirectory = Paths.get(FileUtil.toSystemDependentName(root));
+
+        // Taken before the walk, so that a change made during the walk is seen as a change since the scan.
+        scan.modificationStamp = modificationStamp(root);
+
+        if (Files.isDirectory(rootDirectory)) {
+            try {
+                scan.walk(rootDirectory);
+            } catch (IOException | DirectoryIteratorException io) {
+                logger.warn("Unable to scan the sketch folder '" + root + "'.", io);
+            }
+        }
+
+        return scan;
+    }
+
+    /*
+        Changes whenever a tab or sketch folder is added to or removed from the root, or a file to or from the top of its data
+        directory. Must not be invoked on the event dispatch thread.
+     */
+    static long modificationStamp(@NotNull String root) {
+        Path rootDirectory = Paths.get(FileUtil.toSystemDependentName(root));
+
+        return 31 * lastModified(rootDirectory) + lastModified(rootDirectory.resolve(DATA_DIRECTORY_NAME));
+    }
+
+    private static long lastModified(@NotNull Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException io) {
+            return 0;
+        }
+    }
+
+    private void walk(@NotNull Path rootDirectory) throws IOException {
+        List<Path> pdePaths = new ArrayList<>();
+        List<Path> javaPaths = new ArrayList<>();
+        Path dataPath = null;
+
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(rootDirectory)) {
+            for (Path child : children) {
+                String extension = FileUtil.getExtension(child.getFileName().toString());
+
+                if (Files.isRegularFile(child) && extension.equals("pde")) {
+                    pdePaths.add(child);
+                    pdeBytes += Files.size(child);
+                } else if (Files.isRegularFile(child) && extension.equals("java")) {
+                    javaPaths.add(child);
+                } else if (Files.isDirectory(child) && child.getFileName().toString().equals(DATA_DIRECTORY_NAME)) {
+                    dataPath = child;
+                } else if (Files.isDirectory(child) && containsPdeFile(child)) {
+                    sketchFolders.add(FileUtil.toSystemIndependentName(child.toString()));
+                }
+            }
+        }
+
+        Collections.sort(sketchFolders);
+
+        pdeFiles.addAll(findFiles(pdePaths));
+        javaFiles.addAll(findFiles(javaPaths));
+
+        if (dataPath != null) {
+            walkDataDirectory(dataPath);
+        }
+    }
+
+    private static boolean containsPdeFile(@NotNull Path directory) throws IOException {
+        try (Stream<Path> children = Files.list(directory)) {
+            return children.anyMatch(child -> FileUtil.getExtension(child.getFileName().toString()).equals("pde") && Files.isRegularFile(child));
+        }
+    }
+
+    /*
+        The VFS counterparts of the given files, refreshed so that files created since the VFS last saw the folder are found.
+     */
+    @NotNull
+    private static List<VirtualFile> findFiles(@NotNull List<Path> paths) {
+        paths.sort(Comparator.comparing(path -> path.getFileName().toString()));
+
+        List<VirtualFile> files = new ArrayList<>(paths.size());
+
+        for (Path path : paths) {
+            VirtualFile file = LocalFileSystem.getInstance().refreshAndFindFileByIoFile(path.toFile());
+
+            if (file != null) {
+                files.add(file);
+            }
+        }
+
+        return files;
+    }
+
+    private void walkDataDirectory(@NotNull Path candidateDataDirectory) throws IOException {
+        Files.walkFileTree(candidateDataDirectory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile()) {
+                    dataFileCount++;
+                    dataBytes += attributes.size();
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException io) {
+                logger.warn("Unable to read '" + file + "' whilst scanning the sketch data directory.", io);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        // A data directory without any files has nothing to import.
+        if (dataFileCount > 0) {
+            dataDirectory = LocalFileSystem.getInstance().refreshAndFindFileByIoFile(candidateDataDirectory.toFile());
+
+            // The data files are later copied from the VFS, which must therefore know of every one of them.
+            if (dataDirectory != null) {
+                VfsUtil.markDirtyAndRefresh(false, true, true, dataDirectory);
+            }
+        }
+    }
+
+    @NotNull
+    public String getRoot() {
+        return root;
+    }
+
+    /*
+        The modification stamp of the root when it was scanned.
+     */
+    public long getModificationStamp() {
+        return modificationStamp;
+    }
+
+    @NotNull
+    public List<VirtualFile> getPdeFiles() {
+        return pdeFiles;
+    }
+
+    /*
+        Java tabs of the sketch, which are imported as they are, other than for their package.
+     */
+    @NotNull
+    public List<VirtualFile> getJavaFiles() {
+        return javaFiles;
+    }
+
+    public long getPdeBytes() {
+        return pdeBytes;
+    }
+
+    /*
+        The data directory of the sketch, provided it contains at least one file.
+     */
+    @Nullable
+    public VirtualFile getDataDirectory() {
+        return dataDirectory;
+    }
+
+    public int getDataFileCount() {
+        return dataFileCount;
+    }
+
+    public long getDataBytes() {
+        return dataBytes;
+    }
+
+    /*
+        Paths of the sketch folders directly below the root, i.e. its child directories containing PDE files, in name order.
+        A root without PDE files of its own is treated as a sketchbook of these sketch folders.
+     */
+    @NotNull
+    public List<String> getSketchFolders() {
+        return pdeFiles.isEmpty() ? sketchFolders : Collections.emptyList();
+    }
+
+    @NotNull
+    public String getSummary() {
+        if (! getSketchFolders().isEmpty()) {
+            return sketchFolders.size() + " sketches";
+        }
+
+        String summary = pdeFiles.size() + " PDE files (" + StringUtil.formatFileSize(pdeBytes) + ")";
+
+        if (! javaFiles.isEmpty()) {
+            summary += ", " + javaFiles.size() + " Java files";
+        }
+
+        if (dataFileCount > 0) {
+            summary += ", " + dataFileCount + " data files (" + StringUtil.formatFileSize(dataBytes) + ")";
+        }
+
+        return summary;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.pde_import;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+    Which tabs of a sketch refer to the types declared by which other tabs. Built incrementally as the tabs are analysed, so
+    that the analyses themselves need not be retained, and used to rank the candidates for the main sketch tab: the main tab of a
+    sketch is the one from which the rest of the sketch is reached.
+ */
+class SketchReferenceGraph {
+
+    private final Map<String, String> declaringTabs = new HashMap<>();
+    private final Map<String, Set<String>> referencedTypeNames = new HashMap<>();
+
+    /*
+        Record the declarations and references of the analysed tab. Must be invoked once the tab has been analysed.
+     */
+    void addTab(@NotNull SketchFileAnalysis analysis) {
+        addTab(analysis.getSketchFile().getName(), analysis.getDeclaredTypeNames(), analysis.getReferencedTypeNames());
+    }
+
+    synchronized void addTab(@NotNull String tabName, @NotNull Set<String> declaredTypeNames, @NotNull Set<String> referencedTypeNames) {
+        for (String declaredTypeName : declaredTypeNames) {
+            declaringTabs.putIfAbsent(declaredTypeName, tabName);
+        }
+
+        this.referencedTypeNames.put(tabName, new HashSet<>(referencedTypeNames));
+    }
+
+    /*
+        The number of other tabs reached from the given tab, by following references to types declared in other tabs.
+     */
+    synchronized int countReachableTabs(@NotNull String tabName) {
+        Set<String> reachedTabs = new HashSet<>();
+        Deque<String> pendingTabs = new ArrayDeque<>();
+
+        reachedTabs.add(tabName);
+        pendingTabs.add(tabName);
+
+        while (! pendingTabs.isEmpty()) {
+            Set<String> references = referencedTypeNames.get(pendingTabs.poll());
+
+            if (references == null) {
+                continue;
+            }
+
+            for (String referencedTypeName : references) {
+                String declaringTab = declaringTabs.get(referencedTypeName);
+
+                if (declaringTab != null && reachedTabs.add(declaringTab)) {
+                    pendingTabs.add(declaringTab);
+                }
+            }
+        }
+
+        return reachedTabs.size() - 1;
+    }
+
+    /*
+        Select the candidate from which most of the sketch is reached. Where candidates tie, the candidate named after the sketch
+        folder is preferred, as the Processing IDE names the main tab after its folder. Returns null if the tie remains.
+     */
+    @Nullable
+    MainSketchCandidate selectMainSketch(@NotNull List<MainSketchCandidate> candidates, @Nullable String sketchFolderName) {
+        List<MainSketchCandidate> bestCandidates = new ArrayList<>(candidates.size());
+        int bestReach = -1;
+
+        for (MainSketchCandidate candidate : candidates) {
+            int reach = countReachableTabs(candidate.getName());
+
+            if (reach > bestReach) {
+                bestCandidates.clear();
+                bestReach = reach;
+            }
+
+            if (reach == bestReach) {
+                bestCandidates.add(candidate);
+            }
+        }
+
+        if (bestCandidates.size() == 1) {
+            return bestCandidates.get(0);
+        }
+
+        for (MainSketchCandidate candidate : bestCandidates) {
+            if (candidate.getName().equals(sketchFolderName)) {
+                return candidate;
+            }
+        }
+
+        return null;
+    }
+}
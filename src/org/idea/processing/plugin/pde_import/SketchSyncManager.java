@@ -0,0 +1,446 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.pde_import;
+
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.ide.util.PackageUtil;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.components.StoragePathMacros;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.*;
+import com.intellij.psi.*;
+import com.intellij.psi.codeStyle.CodeStyleManager;
+import org.idea.processing.plugin.ProcessingPluginUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+    Keeps the sources of an imported sketch in step with the PDE files of the original sketch directory.
+
+    A manifest holds a hash of the contents of every converted PDE file. When a PDE file in the sketch directory changes,
+    only that file is converted again, and only if its hash no longer matches the manifest.
+ */
+@State(name = "ProcessingSketchSync", storages = @Storage(file = StoragePathMacros.WORKSPACE_FILE))
+public class SketchSyncManager implements PersistentStateComponent<SketchSyncManager.SyncState>, Disposable {
+
+    private final Logger logger = com.intellij.openapi.diagnostic.Logger.getInstance(SketchSyncManager.class);
+
+    private final Project project;
+
+    // Conversions run one at a time, in the order in which the changes to the sketch directory were made.
+    private final ExecutorService syncExecutor = Executors.newSingleThreadExecutor(
+            runnable -> {
+                Thread syncThread = new Thread(runnable, "Processing Sketch Sync");
+                syncThread.setDaemon(true);
+                return syncThread;
+            });
+
+    private SyncState syncState = new SyncState();
+    private boolean watching;
+    private LocalFileSystem.WatchRequest sketchRootWatchRequest;
+
+    public static class SyncState {
+        public String sketchRoot;
+        public String moduleName;
+        public List<SyncedTab> tabs = new ArrayList<>();
+    }
+
+    public static class SyncedTab {
+        public String path;
+        public String contentHash;
+        public String generatedFileName;
+        public boolean mainSketchTab;
+    }
+
+    public SketchSyncManager(Project project) {
+        this.project = project;
+    }
+
+    public static SketchSyncManager getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, SketchSyncManager.class);
+    }
+
+    /*
+        Record the hashes of the PDE files that have just been imported, and start watching the sketch directory for changes.
+     */
+    public void watch(@NotNull Module module,
+                      @NotNull String sketchRoot,
+                      @NotNull Collection<VirtualFile> importedPdeFiles,
+                      @Nullable String mainSketchTabName) {
+        SyncState newState = new SyncState();
+        newState.sketchRoot = FileUtil.toSystemIndependentName(sketchRoot);
+        newState.moduleName = module.getName();
+
+        for (VirtualFile importedPdeFile : importedPdeFiles) {
+            try {
+                SyncedTab tab = new SyncedTab();
+                tab.path = importedPdeFile.getPath();
+                tab.contentHash = ProcessingPluginUtil.INSTANCE.sha1(importedPdeFile.contentsToByteArray());
+                tab.mainSketchTab = importedPdeFile.getNameWithoutExtension().equals(mainSketchTabName);
+                tab.generatedFileName = generatedFileName(importedPdeFile, tab.mainSketchTab);
+
+                newState.tabs.add(tab);
+            } catch (IOException io) {
+                logger.warn("Unable to read '" + importedPdeFile.getPath() + "' whilst recording the sketch sync manifest.", io);
+            }
+        }
+
+        synchronized (this) {
+            syncState = newState;
+        }
+
+        logger.info("Recorded " + newState.tabs.size() + " PDE files for synchronisation with the sketch directory '" + sketchRoot + "'.");
+
+        startWatching();
+    }
+
+    /*
+        Watch the sketch directory recorded in the manifest, if there is one, moving the watch if the directory has changed.
+     */
+    public void startWatching() {
+        String sketchRoot;
+        boolean listening;
+        LocalFileSystem.WatchRequest watchRequest;
+        synchronized (this) {
+            sketchRoot = syncState.sketchRoot;
+
+            if (sketchRoot == null || (watching && sketchRootWatchRequest != null && sketchRoot.equals(sketchRootWatchRequest.getRootPath()))) {
+                return;
+            }
+
+            listening = watching;
+            watching = true;
+            watchRequest = sketchRootWatchRequest;
+        }
+
+        if (! listening) {
+            VirtualFileManager.getInstance().addVirtualFileListener(new SketchDirectoryListener(), this);
+        }
+
+        /*
+            The sketch directory is usually outside the project, where no file system events are delivered unless it is
+            watched explicitly. The watch is released when this service is disposed.
+         */
+        LocalFileSystem localFileSystem = LocalFileSystem.getInstance();
+        watchRequest = watchRequest == null ?
+                localFileSystem.addRootToWatch(sketchRoot, true) :
+                localFileSystem.replaceWatchedRoot(watchRequest, sketchRoot, true);
+
+        synchronized (this) {
+            sketchRootWatchRequest = watchRequest;
+        }
+
+        if (watchRequest == null) {
+            logger.warn("Unable to watch the sketch directory '" + sketchRoot + "'. Changes will be noticed only when the file system is refreshed.");
+        }
+
+        // Pick up any changes made whilst the directory was not being watched.
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            VirtualFile sketchRootDirectory = localFileSystem.refreshAndFindFileByPath(sketchRoot);
+
+            if (sketchRootDirectory != null) {
+                VfsUtil.markDirtyAndRefresh(true, true, true, sketchRootDirectory);
+            }
+        });
+    }
+
+    @Nullable
+    @Override
+    public synchronized SyncState getState() {
+        return syncState;
+    }
+
+    @Override
+    public synchronized void loadState(SyncState state) {
+        syncState = state;
+    }
+
+    @Override
+    public void dispose() {
+        LocalFileSystem.WatchRequest watchRequest;
+        synchronized (this) {
+            watchRequest = sketchRootWatchRequest;
+            sketchRootWatchRequest = null;
+        }
+
+        if (watchRequest != null) {
+            LocalFileSystem.getInstance().removeWatchedRoot(watchRequest);
+        }
+
+        syncExecutor.shutdownNow();
+    }
+
+    private boolean isSketchTab(@NotNull VirtualFile file) {
+        VirtualFile parent = file.getParent();
+        String sketchRoot = getSketchRoot();
+
+        return sketchRoot != null && parent != null && parent.getPath().equals(sketchRoot) && "pde".equals(file.getExtension());
+    }
+
+    @Nullable
+    private synchronized String getSketchRoot() {
+        return syncState.sketchRoot;
+    }
+
+    @Nullable
+    private synchronized SyncedTab findTab(@NotNull String path) {
+        for (SyncedTab tab : syncState.tabs) {
+            if (tab.path.equals(path)) {
+                return tab;
+            }
+        }
+
+        return null;
+    }
+
+    private synchronized void recordTab(@NotNull SyncedTab tab) {
+        syncState.tabs.removeIf(existing -> existing.path.equals(tab.path));
+        syncState.tabs.add(tab);
+    }
+
+    private synchronized void forgetTab(@NotNull SyncedTab tab) {
+        syncState.tabs.remove(tab);
+    }
+
+    private void synchroniseTab(@NotNull VirtualFile pdeFile) {
+        try {
+            String contentHash = ProcessingPluginUtil.INSTANCE.sha1(pdeFile.contentsToByteArray());
+
+            SyncedTab tab = findTab(pdeFile.getPath());
+
+            if (tab != null && contentHash.equals(tab.contentHash)) {
+                logger.debug("'" + pdeFile.getPath() + "' is unchanged since it was last converted.");
+                return;
+            }
+
+            long conversionStart = System.currentTimeMillis();
+
+            boolean isMainSketchTab = tab != null && tab.mainSketchTab;
+            String convertedText = convertTab(pdeFile, isMainSketchTab);
+
+            if (convertedText == null) {
+                logger.warn("Conversion of '" + pdeFile.getPath() + "' failed. The sketch sources have not been updated.");
+                return;
+            }
+
+            SyncedTab updatedTab = new SyncedTab();
+            updatedTab.path = pdeFile.getPath();
+            updatedTab.contentHash = contentHash;
+            updatedTab.mainSketchTab = isMainSketchTab;
+            updatedTab.generatedFileName = generatedFileName(pdeFile, isMainSketchTab);
+
+            // The tab is recorded by the write itself, so that a write which does not happen leaves it to be converted again.
+            writeGeneratedFile(updatedTab.generatedFileName, convertedText, updatedTab);
+
+            logger.info("Converted '" + pdeFile.getPath() + "' in " + (System.currentTimeMillis() - conversionStart) + "ms.");
+        } catch (IOException io) {
+            logger.warn("Unable to read '" + pdeFile.getPath() + "' whilst synchronising the sketch.", io);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void removeTab(@NotNull String pdeFilePath) {
+        SyncedTab tab = findTab(pdeFilePath);
+
+        if (tab == null) {
+            return;
+        }
+
+        forgetTab(tab);
+
+        ApplicationManager.getApplication().invokeLater(() -> WriteCommandAction.runWriteCommandAction(project, "Synchronise Sketch", null, () -> {
+            PsiDirectory sketchPackage = findSketchPackage();
+            PsiFile generatedFile = sketchPackage == null ? null : sketchPackage.findFile(tab.generatedFileName);
+
+            if (generatedFile != null) {
+                generatedFile.delete();
+            }
+        }), project.getDisposed());
+    }
+
+    /*
+        Convert a single PDE file, as it would have been converted during import, and return the text of the converted class.
+     */
+    @Nullable
+    private String convertTab(@NotNull VirtualFile pdeFile, boolean isMainSketchTab) throws InterruptedException, IOException {
+        Collection<PsiFile> parsedPdeFiles = new PdeConverter().parseAll(project, Collections.singletonList(pdeFile));
+
+        if (parsedPdeFiles.isEmpty()) {
+            return null;
+        }
+
+        List<LiteralDataExtraction.ExtractedLiteral> extractedLiterals = LiteralDataExtraction.getExtractedLiterals(parsedPdeFiles.iterator().next());
+
+        if (! extractedLiterals.isEmpty()) {
+            writeExtractedLiterals(extractedLiterals);
+        }
+
+        PsiElementFactory elementFactory = JavaPsiFacade.getElementFactory(project);
+
+        return ApplicationManager.getApplication().runReadAction((Computable<String>) () -> {
+            SketchFileAnalysis analysis = SketchFileAnalysis.analyze(parsedPdeFiles.iterator().next());
+
+            if (isMainSketchTab && analysis.getImportList() != null) {
+                SketchTokenScan tokenScan = SketchTokenScan.scan(analysis.getSketchFile().getViewProvider().getContents());
+
+                if (tokenScan.declaresTopLevelMethod("draw")) {
+                    MainSketchCandidate candidate = new MainSketchCandidate(analysis, tokenScan);
+
+                    analysis = SketchFileAnalysis.analyze(MigrationActions.postProcessSelectedMainSketchClass(project,
+                            candidate.createSketchClass(elementFactory), analysis.getImportList()));
+                } else {
+                    logger.warn("The main sketch tab '" + pdeFile.getName() + "' no longer declares a draw method.");
+                }
+            }
+
+            return analysis.getSketchFile().getText();
+        });
+    }
+
+    private void writeGeneratedFile(@NotNull String generatedFileName, @NotNull String convertedText, @Nullable SyncedTab writtenTab) {
+        ApplicationManager.getApplication().invokeLater(() -> WriteCommandAction.runWriteCommandAction(project, "Synchronise Sketch", null, () -> {
+            PsiDirectory sketchPackage = findSketchPackage();
+
+            if (sketchPackage == null) {
+                logger.warn("Unable to find the sketch package to which '" + generatedFileName + "' is to be written.");
+                return;
+            }
+
+            // The converted text has no package statement; give it the package of the sketch, as the import does.
+            PsiPackage sketchPsiPackage = JavaDirectoryService.getInstance().getPackage(sketchPackage);
+            String relocatedText = ImportedSketchClassWriter.relocate(convertedText, sketchPsiPackage == null ? "" : sketchPsiPackage.getQualifiedName());
+
+            PsiFile generatedFile = sketchPackage.findFile(generatedFileName);
+            Document generatedDocument = generatedFile == null ? null : PsiDocumentManager.getInstance(project).getDocument(generatedFile);
+
+            if (generatedDocument != null) {
+                generatedDocument.setText(relocatedText);
+                PsiDocumentManager.getInstance(project).commitDocument(generatedDocument);
+            } else {
+                PsiFile convertedFile = PsiFileFactory.getInstance(project).createFileFromText(generatedFileName, JavaFileType.INSTANCE, relocatedText);
+                generatedFile = (PsiFile) sketchPackage.add(convertedFile);
+            }
+
+            CodeStyleManager.getInstance(project).reformat(generatedFile);
+
+            if (writtenTab != null) {
+                recordTab(writtenTab);
+            }
+        }), project.getDisposed());
+    }
+
+    /*
+        Write the literal data extracted from a converted tab to the resources of the module, together with the class through
+        which the sketch loads it.
+     */
+    private void writeExtractedLiterals(@NotNull List<LiteralDataExtraction.ExtractedLiteral> extractedLiterals) throws IOException {
+        Module module = findSyncedModule();
+
+        VirtualFile[] contentRoots = module == null ? VirtualFile.EMPTY_ARRAY : ApplicationManager.getApplication().runReadAction(
+                (Computable<VirtualFile[]>) () -> ModuleRootManager.getInstance(module).getContentRoots());
+
+        VirtualFile resourceDirectory = contentRoots.length == 0 ? null : ImportSketchResources.findProjectResourceDirectory(contentRoots[0]);
+
+        if (resourceDirectory == null) {
+            throw new IOException("Cannot find the resources directory to which the data extracted from the sketch is to be written.");
+        }
+
+        for (LiteralDataExtraction.ExtractedLiteral extractedLiteral : extractedLiterals) {
+            extractedLiteral.writeTo(VfsUtilCore.virtualToIoFile(resourceDirectory));
+        }
+
+        VfsUtil.markDirtyAndRefresh(true, true, true, resourceDirectory);
+
+        writeGeneratedFile(LiteralDataExtraction.LOADER_CLASS_NAME + "." + JavaFileType.DEFAULT_EXTENSION, LiteralDataExtraction.loaderText(), null);
+    }
+
+    @Nullable
+    private Module findSyncedModule() {
+        String moduleName;
+        synchronized (this) {
+            moduleName = syncState.moduleName;
+        }
+
+        return moduleName == null ? null : ModuleManager.getInstance(project).findModuleByName(moduleName);
+    }
+
+    @Nullable
+    private PsiDirectory findSketchPackage() {
+        Module module = findSyncedModule();
+
+        if (module == null) {
+            return null;
+        }
+
+        return PackageUtil.findPossiblePackageDirectoryInModule(module, ImportSketchClasses.DEFAULT_SKETCH_PACKAGE_STATEMENT);
+    }
+
+    @NotNull
+    private static String generatedFileName(@NotNull VirtualFile pdeFile, boolean isMainSketchTab) {
+        String className = isMainSketchTab ? ClassNameSuggester.suggest(pdeFile.getNameWithoutExtension()) : pdeFile.getNameWithoutExtension();
+
+        return className + "." + JavaFileType.DEFAULT_EXTENSION;
+    }
+
+    private class SketchDirectoryListener extends VirtualFileAdapter {
+
+        @Override
+        public void contentsChanged(@NotNull VirtualFileEvent event) {
+            scheduleSynchronisation(event.getFile());
+        }
+
+        @Override
+        public void fileCreated(@NotNull VirtualFileEvent event) {
+            scheduleSynchronisation(event.getFile());
+        }
+
+        @Override
+        public void beforeFileDeletion(@NotNull VirtualFileEvent event) {
+            if (isSketchTab(event.getFile())) {
+                String deletedPath = event.getFile().getPath();
+                syncExecutor.execute(() -> removeTab(deletedPath));
+            }
+        }
+
+        private void scheduleSynchronisation(@NotNull VirtualFile file) {
+            if (isSketchTab(file)) {
+                syncExecutor.execute(() -> synchroniseTab(file));
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.pde_import;
+
+import com.intellij.lang.java.JavaParserDefinition;
+import com.intellij.lexer.Lexer;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.pom.java.LanguageLevel;
+import com.intellij.psi.JavaTokenType;
+import com.intellij.psi.impl.source.tree.ElementType;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.TokenSet;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+    Declarations found outside of any class in a sketch file, and the type names it declares and refers to, by a single forward
+    scan of the tokens of the file. No PSI is built to perform the scan.
+ */
+class SketchTokenScan {
+
+    private static final Collection<String> PROCESSING_METHOD_NAMES = Arrays.asList("setup", "draw", "settings");
+
+    private static final TokenSet TYPE_DECLARATION_KEYWORDS = TokenSet.create(JavaTokenType.CLASS_KEYWORD,
+            JavaTokenType.INTERFACE_KEYWORD, JavaTokenType.ENUM_KEYWORD);
+
+    private static final TokenSet TYPE_MODIFIERS = TokenSet.create(JavaTokenType.PUBLIC_KEYWORD, JavaTokenType.PROTECTED_KEYWORD,
+            JavaTokenType.PRIVATE_KEYWORD, JavaTokenType.ABSTRACT_KEYWORD, JavaTokenType.STATIC_KEYWORD, JavaTokenType.FINAL_KEYWORD,
+            JavaTokenType.STRICTFP_KEYWORD);
+
+    private final Set<String> topLevelProcessingMethods = new HashSet<>(3);
+    private final List<TextRange> importRanges = new LinkedList<>();
+
+    private final Set<String> declaredTypeNames = new HashSet<>();
+    private final Set<String> referencedTypeNames = new HashSet<>();
+    private boolean declaresTypesOnly = true;
+
+    private SketchTokenScan() {
+    }
+
+    @NotNull
+    public static SketchTokenScan scan(@NotNull CharSequence sketchText) {
+        SketchTokenScan scan = new SketchTokenScan();
+
+        Lexer lexer = JavaParserDefinition.createLexer(LanguageLevel.HIGHEST);
+        lexer.start(sketchText);
+
+        int braceDepth = 0;
+        int importStart = -1;
+        boolean inPackageStatement = false;
+        boolean inTypeHeader = false;
+
+        // The three significant tokens preceding the current token, most recent first.
+        IElementType previous = null;
+        IElementType secondPrevious = null;
+        IElementType thirdPrevious = null;
+        String previousIdentifier = null;
+
+        for (IElementType token = lexer.getTokenType(); token != null; lexer.advance(), token = lexer.getTokenType()) {
+            if (ElementType.JAVA_COMMENT_OR_WHITESPACE_BIT_SET.contains(token)) {
+                continue;
+            }
+
+            if (token == JavaTokenType.LBRACE) {
+                if (braceDepth == 0) {
+                    // Only the body of a type may open at the top level; anything else is code outside of a class.
+                    scan.declaresTypesOnly &= inTypeHeader;
+                    inTypeHeader = false;
+                }
+
+                braceDepth++;
+            } else if (token == JavaTokenType.RBRACE) {
+                braceDepth = Math.max(0, braceDepth - 1);
+            } else if (braceDepth == 0) {
+                if (! inTypeHeader && importStart < 0 && ! inPackageStatement && ! TYPE_MODIFIERS.contains(token)
+                        && token != JavaTokenType.SEMICOLON && token != JavaTokenType.IMPORT_KEYWORD && token != JavaTokenType.PACKAGE_KEYWORD
+                        && ! TYPE_DECLARATION_KEYWORDS.contains(token)) {
+                    scan.declaresTypesOnly = false;
+                }
+
+                if (TYPE_DECLARATION_KEYWORDS.contains(token)) {
+                    inTypeHeader = true;
+                } else if (token == JavaTokenType.PACKAGE_KEYWORD) {
+                    inPackageStatement = true;
+                } else if (token == JavaTokenType.SEMICOLON && inPackageStatement) {
+                    inPackageStatement = false;
+                } else if (token == JavaTokenType.IMPORT_KEYWORD) {
+                    importStart = lexer.getTokenStart();
+                } else if (token == JavaTokenType.SEMICOLON && importStart >= 0) {
+                    scan.importRanges.add(new TextRange(importStart, lexer.getTokenEnd()));
+                    importStart = -1;
+                } else if (token == JavaTokenType.RPARENTH &&
+                        previous == JavaTokenType.LPARENTH &&
+                        secondPrevious == JavaTokenType.IDENTIFIER &&
+                        thirdPrevious == JavaTokenType.VOID_KEYWORD &&
+                        PROCESSING_METHOD_NAMES.contains(previousIdentifier)) {
+                    scan.topLevelProcessingMethods.add(previousIdentifier);
+                }
+            }
+
+            if (token == JavaTokenType.IDENTIFIER) {
+                previousIdentifier = lexer.getTokenText();
+
+                if (TYPE_DECLARATION_KEYWORDS.contains(previous) && secondPrevious != JavaTokenType.DOT) {
+                    scan.declaredTypeNames.add(previousIdentifier);
+                } else if (Character.isUpperCase(previousIdentifier.charAt(0))) {
+                    scan.referencedTypeNames.add(previousIdentifier);
+                }
+            }
+
+            thirdPrevious = secondPrevious;
+            secondPrevious = previous;
+            previous = token;
+        }
+
+        return scan;
+    }
+
+    /*
+        Qualified names imported by the file, as collected by {@link SketchFileAnalysis#getImportedNames()}. Only the package
+        and import statements at the head of the file are scanned.
+     */
+    @NotNull
+    public static Set<String> scanImportedNames(@NotNull CharSequence javaText) {
+        Set<String> importedNames = new HashSet<>();
+
+        Lexer lexer = JavaParserDefinition.createLexer(LanguageLevel.HIGHEST);
+        lexer.start(javaText);
+
+        StringBuilder importedName = null;
+        boolean inPackageStatement = false;
+
+        for (IElementType token = lexer.getTokenType(); token != null; lexer.advance(), token = lexer.getTokenType()) {
+            if (ElementType.JAVA_COMMENT_OR_WHITESPACE_BIT_SET.contains(token)) {
+                continue;
+            }
+
+            if (token == JavaTokenType.IMPORT_KEYWORD) {
+                importedName = new StringBuilder();
+            } else if (token == JavaTokenType.PACKAGE_KEYWORD) {
+                inPackageStatement = true;
+            } else if (token == JavaTokenType.SEMICOLON) {
+                if (importedName != null && importedName.length() > 0) {
+                    importedNames.add(StringUtil.trimEnd(importedName.toString(), ".*"));
+                }
+
+                importedName = null;
+                inPackageStatement = false;
+            } else if (importedName != null) {
+                if (token != JavaTokenType.STATIC_KEYWORD) {
+                    importedName.append(lexer.getTokenText());
+                }
+            } else if (! inPackageStatement) {
+                // The imports of a file precede its first declaration.
+                break;
+            }
+        }
+
+        return importedNames;
+    }
+
+    /*
+        Whether the file declares a parameterless method of the given name outside of a class, such as 'void draw()'.
+     */
+    public boolean declaresTopLevelMethod(@NotNull String methodName) {
+        return topLevelProcessingMethods.contains(methodName);
+    }
+
+    /*
+        Whether the file declares only types, and nothing outside of them besides package and import statements, so that it
+        is valid Java once Processing syntax has been rewritten.
+     */
+    public boolean declaresTypesOnly() {
+        return declaresTypesOnly && ! declaredTypeNames.isEmpty();
+    }
+
+    /*
+        Names of the classes, interfaces and enums declared in the file, including nested types.
+     */
+    @NotNull
+    public Set<String> getDeclaredTypeNames() {
+        return declaredTypeNames;
+    }
+
+    /*
+        Identifiers in the file that may name a type, as collected by {@link SketchFileAnalysis#getReferencedTypeNames()}.
+     */
+    @NotNull
+    public Set<String> getReferencedTypeNames() {
+        return referencedTypeNames;
+    }
+
+    /*
+        Text ranges of the import statements of the file, in the order in which they appear.
+     */
+    @NotNull
+    public List<TextRange> getImportRanges() {
+        return importRanges;
+    }
+
+    /*
+        The text of the sketch file, less its import statements.
+     */
+    @NotNull
+    public String withoutImports(@NotNull CharSequence sketchText) {
+        StringBuilder withoutImports = new StringBuilder(sketchText.length());
+
+        int copiedUpTo = 0;
+        for (TextRange importRange : importRanges) {
+            withoutImports.append(sketchText, copiedUpTo, importRange.getStartOffset());
+            copiedUpTo = importRange.getEndOffset();
+        }
+
+        withoutImports.append(sketchText, copiedUpTo, sketchText.length());
+
+        return withoutImports.toString();
+    }
+}
@@ -20,19 +20,18 @@ package org.idea.processing.plugin.project_creation;
 
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.SystemInfo;
-import com.intellij.util.net.HttpConfigurable;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.model.Model;
 import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
 import org.apache.maven.model.io.xpp3.MavenXpp3Writer;
 import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.idea.processing.plugin.project_creation.dependency.RepositoryQueries;
 import org.idea.processing.plugin.project_creation.dependency.Version;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -61,34 +60,28 @@ class CreateVersionedProcessingPom implements Callable<File> {
     public File call() throws IOException {
         String processingCorePomName = "core-" + version.toString() + ".pom";
 
-        Model pomModel = null;
-
         if (centralRepos.isEmpty()) {
             logger.warn("No central repositories were specified. Creation of custom dependency POM is likely to fail.");
         }
 
-        for (URL repoUrl : centralRepos) {
-            try {
-                URL artifactPomUrl = new URL(repoUrl.toExternalForm() + PROCESSING_CORE_RELATIVE_LOCATION + "/" + version + "/" + processingCorePomName);
-
-                logger.info("Attempting to download artifact at URL: " + artifactPomUrl.toString());
-
-                HttpURLConnection pomConn = HttpConfigurable.getInstance().openHttpConnection(artifactPomUrl.toExternalForm());
+        // The repositories are queried concurrently, and the POM of the first to respond is taken.
+        Model pomModel = RepositoryQueries.getInstance().queryFirst(centralRepos, (repoUrl, connections) -> {
+            String artifactPomUrl = repoUrl.toExternalForm() + PROCESSING_CORE_RELATIVE_LOCATION + "/" + version + "/" + processingCorePomName;
 
-                try {
-                    pomModel = createModelFromRemotePom(pomConn);
-                } catch (XmlPullParserException xml) {
-                    logger.error(xml);
-                    throw new IllegalStateException("Reading POM resource successful, but construction of in-memory dependency model from it failed.", xml);
-                }
+            logger.info("Attempting to download artifact at URL: " + artifactPomUrl);
 
-                if (pomModel != null) {
-                    break;
-                }
-            } catch (MalformedURLException mue) {
-                logger.error(mue);
-                throw new IllegalStateException("Failed to create a valid URL to the remote Maven repository.", mue);
+            try {
+                return createModelFromRemotePom(connections.open(artifactPomUrl));
+            } catch (FileNotFoundException notFound) {
+                // The repository is reachable, but does not have this version.
+                return null;
+            } catch (XmlPullParserException xml) {
+                throw new IOException("Reading POM resource '" + artifactPomUrl + "' successful, but construction of in-memory dependency model from it failed.", xml);
             }
+        });
+
+        if (pomModel == null) {
+            throw new IOException("The POM of Processing version " + version + " was not found in any of the central repositories.");
         }
 
         Model projectDependenciesPomModel = createProjectDependencyPomModel(pomModel);
@@ -107,12 +100,12 @@ class CreateVersionedProcessingPom implements Callable<File> {
         return projectTemplatePom;
     }
 
-    private Model createModelFromRemotePom(@NotNull HttpURLConnection pomResourceConn) throws IOException, XmlPullParserException {
-        Reader bufferedPomReader = new BufferedReader(new InputStreamReader(pomResourceConn.getInputStream()));
+    private Model createModelFromRemotePom(@NotNull URLConnection pomResourceConn) throws IOException, XmlPullParserException {
+        try (Reader bufferedPomReader = new BufferedReader(new InputStreamReader(pomResourceConn.getInputStream()))) {
+            MavenXpp3Reader pomUnmarshaller = new MavenXpp3Reader();
 
-        MavenXpp3Reader pomUnmarshaller = new MavenXpp3Reader();
-
-        return pomUnmarshaller.read(bufferedPomReader);
+            return pomUnmarshaller.read(bufferedPomReader);
+        }
     }
 
     private Model createProjectDependencyPomModel(Model processingPomModel) {
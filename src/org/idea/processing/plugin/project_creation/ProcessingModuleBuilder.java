@@ -42,13 +42,9 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
 import org.idea.processing.plugin.ProcessingPluginUtil;
 import org.idea.processing.plugin.project_creation.dependency.AddDependenciesToProject;
+import org.idea.processing.plugin.project_creation.dependency.ArtifactResolver;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.jetbrains.idea.maven.execution.MavenExternalExecutor;
-import org.jetbrains.idea.maven.execution.MavenRunnerParameters;
-import org.jetbrains.idea.maven.execution.MavenRunnerSettings;
-import org.jetbrains.idea.maven.project.MavenConsole;
-import org.jetbrains.idea.maven.project.MavenConsoleImpl;
 import org.jetbrains.jps.model.java.JavaResourceRootType;
 import org.idea.processing.plugin.project_creation.dependency.DependencyResolutionBundle;
 import org.idea.processing.plugin.project_creation.dependency.Version;
@@ -57,7 +53,6 @@ import org.idea.processing.plugin.project_creation.wizard.ConfigureProcessingPro
 import javax.swing.*;
 import java.io.File;
 import java.io.IOException;
-import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.function.Predicate;
@@ -107,6 +102,18 @@ public class ProcessingModuleBuilder extends JavaModuleBuilder {
     public List<Module> commit(@NotNull Project project, ModifiableModuleModel model, ModulesProvider modulesProvider) {
         List<Module> modules = super.commit(project, model, modulesProvider);
 
+        if (modules != null) {
+            attachProcessingLibrary(project, modules);
+        }
+
+        return modules;
+    }
+
+    /*
+        Resolves the dependencies of the Processing version selected in the wizard, and attaches them to each of the given
+        modules as a single project library.
+     */
+    public void attachProcessingLibrary(@NotNull Project project, @NotNull List<Module> modules) {
         Pair<Version, String> selectedProcessingVersion = ConfigureProcessingProject.Parameters.processingVersionDescriptor;
 
         File versionSpecificDependencyDirectory = new File(selectedProcessingVersion.getSecond());
@@ -133,41 +140,26 @@ public class ProcessingModuleBuilder extends JavaModuleBuilder {
 
             logger.info("Creating a Maven POM file to describe the necessary dependencies.");
 
+            File dependencyPom;
+
             try {
-                createPomTask.call();
+                dependencyPom = createPomTask.call();
             } catch (IOException io) {
                 logger.error("POM file creation failed at root: '" + versionedDependencyDirUrl + "'. Dependency resolution terminated due to: ", io);
                 // @TODO Add a UI notification to indicate that dependencies for project could not be resolved.
-                return modules;
+                return;
             }
 
-            logger.info("POM file creation succeeded. Proceeding to run Maven executor with the generated POM.");
-
-            MavenRunnerSettings settings = new MavenRunnerSettings();
-            settings.getMavenProperties().put("interactiveMode", "false");
-            settings.getMavenProperties().put("outputDirectory", "./");
-
-            MavenRunnerParameters params = new MavenRunnerParameters();
-            params.setWorkingDirPath(versionSpecificDependencyDirectory.getPath());
-
-            String mavenDependencyPluginVersion = DependencyResolutionBundle.key("maven_dependency_plugin_version");
+            logger.info("POM file creation succeeded. Proceeding to resolve and download the dependencies it declares.");
 
-            logger.debug("maven-dependency-plugin version to use is '" + mavenDependencyPluginVersion + "'.");
-
-            params.setGoals(Collections.singletonList("org.apache.maven.plugins:maven-dependency-plugin:"
-                                                        + mavenDependencyPluginVersion + ":copy-dependencies"));
-
-            MavenConsole console = new MavenConsoleImpl("Resolve Processing Dependencies", project);
-
-            MavenExternalExecutor runner = new MavenExternalExecutor(project, params, null, settings, console);
-
-            boolean resolutionSuccess = runner.execute(null);
+            try {
+                List<File> downloadedJars = new ArtifactResolver(DependencyResolutionBundle.getCentralRepos())
+                        .resolve(dependencyPom, versionSpecificDependencyDirectory);
 
-            if (resolutionSuccess) {
-                logger.info("Dependency resolution to the root '" + versionedDependencyDirUrl + "' succeeded.");
-            } else {
-                logger.warn("copy-dependency goal completed unsuccessfully.");
-                return modules;
+                logger.info("Dependency resolution to the root '" + versionedDependencyDirUrl + "' succeeded; " + downloadedJars.size() + " jars downloaded.");
+            } catch (IOException io) {
+                logger.warn("Resolution of the dependencies declared by '" + dependencyPom + "' completed unsuccessfully.", io);
+                return;
             }
         }
 
@@ -175,15 +167,11 @@ public class ProcessingModuleBuilder extends JavaModuleBuilder {
 
         logger.info("Adding Processing dependencies at root '" + dependencyDirectory.getPath() + "' as a dependency of the project.");
 
-        Module createdModule = modules.get(0);
-
-        AddDependenciesToProject depsToProject = new AddDependenciesToProject(createdModule, dependencyDirectory);
+        AddDependenciesToProject depsToProject = new AddDependenciesToProject(project, modules, dependencyDirectory);
 
         app.invokeLater(() -> app.runWriteAction(depsToProject));
 
         logger.info("Processing library version " + selectedProcessingVersion.first + " dependency resolution completed.");
-
-        return modules;
     }
 
     @Override
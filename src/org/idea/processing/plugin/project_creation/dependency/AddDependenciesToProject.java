@@ -20,6 +20,7 @@ package org.idea.processing.plugin.project_creation.dependency;
 
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.ModifiableRootModel;
 import com.intellij.openapi.roots.ModuleRootManager;
 import com.intellij.openapi.roots.OrderRootType;
@@ -29,52 +30,74 @@ import com.intellij.openapi.roots.libraries.LibraryTablesRegistrar;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Collection;
+
 public class AddDependenciesToProject implements Runnable {
 
     private final Logger logger = com.intellij.openapi.diagnostic.Logger.getInstance(AddDependenciesToProject.class);
 
-    private final Module module;
+    static final String PROCESSING_CORE_LIBRARY_NAME = "processing-core";
+
+    private final Project project;
+    private final Collection<Module> modules;
     private final VirtualFile jarDirectory;
 
-    public AddDependenciesToProject(@NotNull Module module, @NotNull VirtualFile jarDirectory) {
-        this.module = module;
+    public AddDependenciesToProject(@NotNull Project project, @NotNull Collection<Module> modules, @NotNull VirtualFile jarDirectory) {
+        this.project = project;
+        this.modules = modules;
         this.jarDirectory = jarDirectory;
     }
 
     /*
-        Adds the designated directory as a dependency of the specified module and project associated with the module.
+        Adds the designated directory as a dependency of the project, and of each of the specified modules. The project library
+        is created once, and shared by all of the modules.
      */
     @Override
     public void run() {
-        if (module.isDisposed() || module.getProject().isDisposed()) {
-            logger.warn("Either the module '" + module.getName() + "' or project '" + module.getProject().getName() + " has been disposed." +
-                    " Cannot add root '" + jarDirectory.getPath() + " as a project and module dependency.");
+        if (project.isDisposed()) {
+            logger.warn("The project '" + project.getName() + "' has been disposed. Cannot add root '" + jarDirectory.getPath() + " as a project and module dependency.");
             return;
         }
 
-        LibraryTable projectLibraryTable = LibraryTablesRegistrar.getInstance().getLibraryTable(module.getProject());
-        LibraryTable.ModifiableModel projectLibraryModel = projectLibraryTable.getModifiableModel();
+        LibraryTable projectLibraryTable = LibraryTablesRegistrar.getInstance().getLibraryTable(project);
+        Library processingLibrary = projectLibraryTable.getLibraryByName(PROCESSING_CORE_LIBRARY_NAME);
 
-        logger.debug("Adding '" + jarDirectory + "' as a dependency of the project '" + module.getProject().getName() + "'.");
+        if (processingLibrary == null) {
+            LibraryTable.ModifiableModel projectLibraryModel = projectLibraryTable.getModifiableModel();
 
-        // Create library and add it as a project level dependency.
-        Library processingLibrary = createProcessingCoreDependencyLibrary(projectLibraryModel);
-        projectLibraryModel.commit();
+            logger.debug("Adding '" + jarDirectory + "' as a dependency of the project '" + project.getName() + "'.");
 
-        logger.debug("Change committed to the project library table.");
+            // Create library and add it as a project level dependency.
+            processingLibrary = createProcessingCoreDependencyLibrary(projectLibraryModel);
+            projectLibraryModel.commit();
+
+            logger.debug("Change committed to the project library table.");
+        }
 
-        logger.debug("Adding '" + jarDirectory + "' as a dependency of the module '" + module.getProject().getName() + "'.");
+        for (Module module : modules) {
+            if (module.isDisposed()) {
+                logger.warn("The module '" + module.getName() + "' has been disposed. Cannot add root '" + jarDirectory.getPath() + " as a module dependency.");
+                continue;
+            }
 
-        // Add library as the module level dependency.
-        ModifiableRootModel rootModel = ModuleRootManager.getInstance(module).getModifiableModel();
-        rootModel.addLibraryEntry(processingLibrary);
-        rootModel.commit();
+            logger.debug("Adding '" + jarDirectory + "' as a dependency of the module '" + module.getName() + "'.");
+
+            // Add library as the module level dependency.
+            ModifiableRootModel rootModel = ModuleRootManager.getInstance(module).getModifiableModel();
+
+            if (rootModel.findLibraryOrderEntry(processingLibrary) == null) {
+                rootModel.addLibraryEntry(processingLibrary);
+                rootModel.commit();
+            } else {
+                rootModel.dispose();
+            }
+        }
 
-        logger.debug("Change committed to the module library table.");
+        logger.debug("Change committed to the library tables of " + modules.size() + " modules.");
     }
 
     private Library createProcessingCoreDependencyLibrary(@NotNull LibraryTable.ModifiableModel libraryModel) {
-         Library processingCoreLibrary = libraryModel.createLibrary("processing-core");
+         Library processingCoreLibrary = libraryModel.createLibrary(PROCESSING_CORE_LIBRARY_NAME);
          Library.ModifiableModel modifiableModel = processingCoreLibrary.getModifiableModel();
 
          modifiableModel.addJarDirectory(jarDirectory, true, OrderRootType.CLASSES);
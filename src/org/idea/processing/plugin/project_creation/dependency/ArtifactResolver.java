@@ -0,0 +1,681 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.project_creation.dependency;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.StreamUtil;
+import org.apache.maven.model.*;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+    Resolves the dependencies declared by a POM, and their transitive dependencies, and downloads their jars to a directory, as
+    the copy-dependencies goal of the maven-dependency-plugin does, but within the IDE process.
+
+    Dependencies are resolved breadth first, with the POMs of each level fetched concurrently, so that the nearest declaration
+    of an artifact is selected, as Maven selects it. POMs are resolved with their parents, whose properties, managed versions
+    and dependencies they inherit. Only compile and runtime dependencies that are not optional are followed, and exclusions
+    are honoured. Profiles and imported dependency management are not applied, and version ranges resolve to the latest
+    release of the artifact.
+
+    Jars are downloaded concurrently, and each is verified against the SHA-1 checksum published alongside it, and kept in a
+    store shared by all of the versions of the dependency root. Repositories may be given as file URLs, such as those of a
+    local repository standing in for a remote one.
+ */
+public class ArtifactResolver {
+
+    private final Logger logger = com.intellij.openapi.diagnostic.Logger.getInstance(ArtifactResolver.class);
+
+    private static final int DOWNLOAD_THREAD_COUNT = 6;
+    private static final int MAX_PARENT_DEPTH = 16;
+
+    private static final Collection<String> FOLLOWED_SCOPES = Arrays.asList("compile", "runtime");
+    private static final Collection<String> JAR_TYPES = Arrays.asList("jar", "bundle", "test-jar", "maven-plugin", "ejb");
+
+    private static final Pattern PROPERTY_REFERENCE_PATTERN = Pattern.compile("\\$\\{([^}]+)}");
+
+    private final List<URL> repositories;
+    private final Map<String, CompletableFuture<RemotePom>> remotePoms = new ConcurrentHashMap<>();
+
+    private ExecutorService executor;
+    private JarStore jarStore;
+
+    public ArtifactResolver(@NotNull Collection<URL> repositories) {
+        this.repositories = new ArrayList<>(repositories);
+    }
+
+    /*
+        Resolves the dependencies declared by the POM file, and downloads their jars to the destination directory, which is the
+        directory of a version within the dependency root. The jars are kept in the {@link JarStore} of the dependency root,
+        and linked into the destination. Returns the jars of the destination.
+     */
+    @NotNull
+    public List<File> resolve(@NotNull File pomFile, @NotNull File destination) throws IOException {
+        Model projectModel;
+
+        try (Reader pomReader = new BufferedReader(new FileReader(pomFile))) {
+            projectModel = new MavenXpp3Reader().read(pomReader);
+        } catch (XmlPullParserException xml) {
+            throw new IOException("The POM '" + pomFile + "' is not valid.", xml);
+        }
+
+        jarStore = new JarStore(destination.getAbsoluteFile().getParentFile());
+
+        AtomicInteger threadCount = new AtomicInteger();
+
+        executor = Executors.newFixedThreadPool(DOWNLOAD_THREAD_COUNT, runnable -> {
+            Thread resolverThread = new Thread(runnable, "Processing Artifact Resolver " + threadCount.incrementAndGet());
+            resolverThread.setDaemon(true);
+            return resolverThread;
+        });
+
+        try {
+            long startTime = System.currentTimeMillis();
+
+            Collection<Artifact> artifacts = collectArtifacts(projectModel);
+
+            logger.info("Resolved " + artifacts.size() + " artifacts in " + (System.currentTimeMillis() - startTime) + "ms.");
+
+            List<File> downloadedJars = downloadJars(artifacts, destination);
+
+            logger.info("Downloaded " + downloadedJars.size() + " jars to '" + destination + "' in " + (System.currentTimeMillis() - startTime) + "ms.");
+
+            return downloadedJars;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /*
+        Walks the dependency graph a level at a time. An artifact is selected where it is first reached, so that a nearer
+        declaration of an artifact takes precedence over a more distant one.
+     */
+    @NotNull
+    private Collection<Artifact> collectArtifacts(@NotNull Model projectModel) throws IOException {
+        EffectivePom projectPom = new EffectivePom(projectModel, null, Collections.emptyList());
+
+        Map<String, Artifact> selectedArtifacts = new LinkedHashMap<>();
+        List<Artifact> level = new ArrayList<>();
+
+        for (Dependency dependency : projectPom.getDependencies()) {
+            if (dependency.getScope() == null || FOLLOWED_SCOPES.contains(dependency.getScope())) {
+                addArtifact(level, dependency, projectPom, Collections.emptySet());
+            }
+        }
+
+        while (! level.isEmpty()) {
+            Map<String, Future<EffectivePom>> levelPoms = new HashMap<>();
+
+            for (Artifact artifact : level) {
+                if (! selectedArtifacts.containsKey(artifact.getKey())) {
+                    levelPoms.computeIfAbsent(artifact.getCoordinate(), coordinate -> executor.submit(() -> loadEffectivePom(artifact.groupId, artifact.artifactId, artifact.version)));
+                }
+            }
+
+            List<Artifact> nextLevel = new ArrayList<>();
+
+            for (Artifact artifact : level) {
+                if (selectedArtifacts.containsKey(artifact.getKey())) {
+                    continue;
+                }
+
+                EffectivePom artifactPom = await(levelPoms.get(artifact.getCoordinate()));
+
+                selectedArtifacts.put(artifact.getKey(), artifact);
+
+                if (artifactPom == null) {
+                    logger.warn("No POM was found for '" + artifact + "'. Its dependencies, if any, will not be resolved.");
+                    continue;
+                }
+
+                // Artifacts declared with the same coordinate share a POM, and the version it was resolved to.
+                artifact.version = artifactPom.getVersion();
+                artifact.repository = artifactPom.repository;
+
+                for (Dependency dependency : artifactPom.getDependencies()) {
+                    boolean followed = (dependency.getScope() == null || FOLLOWED_SCOPES.contains(dependency.getScope()))
+                            && ! dependency.isOptional() && ! artifact.excludes(dependency);
+
+                    if (followed) {
+                        addArtifact(nextLevel, dependency, artifactPom, artifact.exclusions);
+                    }
+                }
+            }
+
+            level = nextLevel;
+        }
+
+        return selectedArtifacts.values();
+    }
+
+    /*
+        A dependency without a version, such as one managed by an imported bill of materials, which is not supported, is left
+        out rather than failing the whole resolution.
+     */
+    private void addArtifact(@NotNull List<Artifact> level, @NotNull Dependency dependency, @NotNull EffectivePom declaringPom,
+                             @NotNull Set<String> inheritedExclusions) {
+        if (dependency.getVersion() == null) {
+            logger.warn("No version is declared or managed for the dependency '" + dependency.getManagementKey() + "' of '"
+                    + declaringPom.model.getId() + "'. It will not be resolved.");
+            return;
+        }
+
+        level.add(new Artifact(dependency, inheritedExclusions));
+    }
+
+    @Nullable
+    private EffectivePom loadEffectivePom(@NotNull String groupId, @NotNull String artifactId, @NotNull String version) throws IOException {
+        RemotePom remotePom = fetchPom(groupId, artifactId, resolveVersion(groupId, artifactId, version));
+
+        return remotePom == null ? null : createEffectivePom(remotePom, 0);
+    }
+
+    @NotNull
+    private EffectivePom createEffectivePom(@NotNull RemotePom remotePom, int depth) throws IOException {
+        Parent parent = remotePom.model.getParent();
+
+        if (parent == null || depth >= MAX_PARENT_DEPTH) {
+            return new EffectivePom(remotePom.model, remotePom.repository, Collections.emptyList());
+        }
+
+        RemotePom parentPom = fetchPom(parent.getGroupId(), parent.getArtifactId(), parent.getVersion());
+
+        if (parentPom == null) {
+            logger.warn("The parent '" + parent.getId() + "' of '" + remotePom.model.getId() + "' was not found. It will be resolved without it.");
+            return new EffectivePom(remotePom.model, remotePom.repository, Collections.emptyList());
+        }
+
+        EffectivePom effectiveParent = createEffectivePom(parentPom, depth + 1);
+
+        List<Model> ancestors = new ArrayList<>(effectiveParent.ancestors);
+        ancestors.add(0, effectiveParent.model);
+
+        return new EffectivePom(remotePom.model, remotePom.repository, ancestors);
+    }
+
+    /*
+        Each POM is fetched once, however many artifacts depend upon it, or inherit from it.
+     */
+    @Nullable
+    private RemotePom fetchPom(@NotNull String groupId, @NotNull String artifactId, @NotNull String version) throws IOException {
+        CompletableFuture<RemotePom> fetchedPom = new CompletableFuture<>();
+        CompletableFuture<RemotePom> existingPom = remotePoms.putIfAbsent(groupId + ":" + artifactId + ":" + version, fetchedPom);
+
+        if (existingPom != null) {
+            return await(existingPom);
+        }
+
+        try {
+            fetchedPom.complete(RepositoryQueries.getInstance().queryFirst(repositories, (repository, connections) -> {
+                String pomLocation = getArtifactLocation(repository, groupId, artifactId, version, null, "pom");
+
+                try (Reader pomReader = new BufferedReader(new InputStreamReader(connections.open(pomLocation).getInputStream(), StandardCharsets.UTF_8))) {
+                    return new RemotePom(new MavenXpp3Reader().read(pomReader, false), repository);
+                } catch (FileNotFoundException notFound) {
+                    return null;
+                } catch (XmlPullParserException xml) {
+                    throw new IOException("The POM '" + pomLocation + "' is not valid.", xml);
+                }
+            }));
+        } catch (IOException io) {
+            fetchedPom.completeExceptionally(io);
+            throw io;
+        }
+
+        return await(fetchedPom);
+    }
+
+    /*
+        Versions given as LATEST, RELEASE, or a range, are resolved from the maven-metadata.xml of the artifact.
+     */
+    @NotNull
+    private String resolveVersion(@NotNull String groupId, @NotNull String artifactId, @NotNull String version) throws IOException {
+        boolean isRange = version.startsWith("[") || version.startsWith("(");
+
+        if (! isRange && ! version.equals("LATEST") && ! version.equals("RELEASE")) {
+            return version;
+        }
+
+        String resolvedVersion = RepositoryQueries.getInstance().queryFirst(repositories, (repository, connections) -> {
+            String metadataLocation = DependencyUtils.getArtifactLocation(repository, groupId, artifactId) + "/" + DependencyUtils.MAVEN_METADATA_FILE_NAME;
+
+            try (InputStream metadataStream = connections.open(metadataLocation).getInputStream()) {
+                return readMetadataVersion(metadataStream, version.equals("LATEST") ? "latest" : "release");
+            } catch (FileNotFoundException notFound) {
+                return null;
+            }
+        });
+
+        if (resolvedVersion == null) {
+            throw new IOException("Unable to resolve version '" + version + "' of '" + groupId + ":" + artifactId + "'.");
+        }
+
+        logger.debug("Resolved version '" + version + "' of '" + groupId + ":" + artifactId + "' as " + resolvedVersion + ".");
+
+        return resolvedVersion;
+    }
+
+    /*
+        The version of the given element of the metadata, or the last version listed where the metadata has no such element.
+     */
+    @Nullable
+    private static String readMetadataVersion(@NotNull InputStream metadataStream, @NotNull String elementName) throws IOException {
+        String lastListedVersion = null;
+
+        try {
+            XMLStreamReader metadataReader = DependencyUtils.createMetadataReader(metadataStream);
+
+            try {
+                while (metadataReader.hasNext()) {
+                    if (metadataReader.next() != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+
+                    if (metadataReader.getLocalName().equals(elementName)) {
+                        return metadataReader.getElementText().trim();
+                    } else if (metadataReader.getLocalName().equals("version")) {
+                        lastListedVersion = metadataReader.getElementText().trim();
+                    }
+                }
+            } finally {
+                metadataReader.close();
+            }
+        } catch (XMLStreamException xse) {
+            throw new IOException("The artifact metadata is not valid: " + xse.getMessage(), xse);
+        }
+
+        return lastListedVersion;
+    }
+
+    @NotNull
+    private List<File> downloadJars(@NotNull Collection<Artifact> artifacts, @NotNull File destination) throws IOException {
+        if (! destination.isDirectory() && ! destination.mkdirs()) {
+            throw new IOException("Unable to create dependency directory at '" + destination + "'.");
+        }
+
+        Map<Artifact, Future<File>> downloads = new LinkedHashMap<>();
+
+        for (Artifact artifact : artifacts) {
+            if (JAR_TYPES.contains(artifact.type)) {
+                downloads.put(artifact, executor.submit(() -> downloadJar(artifact, destination)));
+            }
+        }
+
+        List<File> downloadedJars = new ArrayList<>(downloads.size());
+
+        for (Map.Entry<Artifact, Future<File>> download : downloads.entrySet()) {
+            File downloadedJar = await(download.getValue());
+
+            if (downloadedJar == null) {
+                throw new FileNotFoundException("The jar of '" + download.getKey() + "' was not found in any of the repositories.");
+            }
+
+            downloadedJars.add(downloadedJar);
+        }
+
+        return downloadedJars;
+    }
+
+    /*
+        Downloads the jar from the repository its POM was found in, and then from each of the others, until one of them has it.
+        The jar is written to a temporary file, and moved into the jar store only once its checksum has been verified. A jar
+        whose published checksum is that of a jar already in the store is not downloaded again.
+     */
+    @Nullable
+    private File downloadJar(@NotNull Artifact artifact, @NotNull File destination) throws IOException {
+        List<URL> candidateRepositories = new ArrayList<>(RepositoryQueries.getInstance().rank(repositories));
+
+        if (artifact.repository != null) {
+            // Compared by their external form, as URL equality resolves host names.
+            candidateRepositories.removeIf(repository -> repository.toExternalForm().equals(artifact.repository.toExternalForm()));
+            candidateRepositories.add(0, artifact.repository);
+        }
+
+        File jar = new File(destination, artifact.getFileName());
+        File partialJar = new File(destination, artifact.getFileName() + ".part");
+
+        IOException lastFailure = null;
+
+        for (URL repository : candidateRepositories) {
+            String jarLocation = getArtifactLocation(repository, artifact.groupId, artifact.artifactId, artifact.version, artifact.classifier, "jar");
+            RepositoryQueries.Connections connections = new RepositoryQueries.Connections();
+
+            try {
+                String expectedChecksum = readChecksum(connections, jarLocation + ".sha1");
+                File storedJar = expectedChecksum == null ? null : jarStore.find(expectedChecksum);
+
+                if (storedJar != null) {
+                    jarStore.linkInto(storedJar, jar);
+
+                    logger.debug("'" + jarLocation + "' has already been downloaded, as '" + storedJar + "'.");
+
+                    return jar;
+                }
+
+                String checksum;
+
+                try (DigestInputStream jarStream = new DigestInputStream(connections.open(jarLocation).getInputStream(), createSha1Digest())) {
+                    Files.copy(jarStream, partialJar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    checksum = toHex(jarStream.getMessageDigest().digest());
+                }
+
+                if (expectedChecksum == null) {
+                    logger.warn("No checksum is published for '" + jarLocation + "'. The jar cannot be verified.");
+                } else if (! expectedChecksum.equalsIgnoreCase(checksum)) {
+                    throw new IOException("The SHA-1 checksum of '" + jarLocation + "' is " + checksum + ", rather than the published " + expectedChecksum + ".");
+                }
+
+                jarStore.linkInto(jarStore.store(partialJar, checksum), jar);
+
+                logger.debug("Downloaded '" + jarLocation + "'.");
+
+                return jar;
+            } catch (FileNotFoundException notFound) {
+                logger.debug("'" + jarLocation + "' was not found.");
+            } catch (IOException io) {
+                logger.warn("Download of '" + jarLocation + "' failed: " + io.getMessage());
+                lastFailure = io;
+            } finally {
+                Files.deleteIfExists(partialJar.toPath());
+            }
+        }
+
+        if (lastFailure != null) {
+            throw lastFailure;
+        }
+
+        return null;
+    }
+
+    @Nullable
+    private String readChecksum(@NotNull RepositoryQueries.Connections connections, @NotNull String checksumLocation) throws IOException {
+        try (InputStream checksumStream = connections.open(checksumLocation).getInputStream()) {
+            String checksumText = StreamUtil.readText(checksumStream, StandardCharsets.US_ASCII).trim();
+
+            // Checksum files may be followed by the name of the file they are the checksum of.
+            String checksum = checksumText.isEmpty() ? "" : checksumText.split("\\s+")[0];
+
+            // Anything else, such as the page of a proxy served in place of the checksum, is as good as no checksum.
+            if (! JarStore.isSha1(checksum)) {
+                logger.warn("'" + checksumLocation + "' does not hold a SHA-1 checksum. It is ignored.");
+                return null;
+            }
+
+            return checksum.toLowerCase(Locale.ROOT);
+        } catch (FileNotFoundException notFound) {
+            return null;
+        }
+    }
+
+    @NotNull
+    private static MessageDigest createSha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException("SHA-1 is not supported by this JVM.", nsae);
+        }
+    }
+
+    @NotNull
+    private static String toHex(@NotNull byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return hex.toString();
+    }
+
+    @NotNull
+    private static String getArtifactLocation(@NotNull URL repository, @NotNull String groupId, @NotNull String artifactId,
+                                              @NotNull String version, @Nullable String classifier, @NotNull String extension) {
+        return DependencyUtils.getArtifactLocation(repository, groupId, artifactId) + "/" + version + "/" +
+                artifactId + "-" + version + (classifier == null ? "" : "-" + classifier) + "." + extension;
+    }
+
+    /*
+        Waits upon a POM fetch or download, rethrowing its failure.
+     */
+    @Nullable
+    private static <T> T await(@NotNull Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted whilst resolving dependencies.");
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+
+            throw new IOException("Dependency resolution failed.", ee.getCause());
+        }
+    }
+
+    private static class RemotePom {
+        private final Model model;
+        private final URL repository;
+
+        private RemotePom(@NotNull Model model, @NotNull URL repository) {
+            this.model = model;
+            this.repository = repository;
+        }
+    }
+
+    /**
+        A POM together with its ancestors, nearest first, from which it inherits properties, managed versions and dependencies.
+     */
+    private static class EffectivePom {
+        private final Model model;
+        private final URL repository;
+        private final List<Model> ancestors;
+        private final Map<String, String> properties = new HashMap<>();
+        private final Map<String, String> managedVersions = new HashMap<>();
+
+        private EffectivePom(@NotNull Model model, @Nullable URL repository, @NotNull List<Model> ancestors) {
+            this.model = model;
+            this.repository = repository;
+            this.ancestors = ancestors;
+
+            // Properties of the POM override those of its ancestors.
+            for (int ancestorIndex = ancestors.size() - 1; ancestorIndex >= 0; ancestorIndex--) {
+                addProperties(ancestors.get(ancestorIndex));
+            }
+
+            addProperties(model);
+
+            String groupId = model.getGroupId() != null ? model.getGroupId() : model.getParent() != null ? model.getParent().getGroupId() : "";
+            String version = model.getVersion() != null ? model.getVersion() : model.getParent() != null ? model.getParent().getVersion() : "";
+
+            for (String prefix : Arrays.asList("project.", "pom.", "")) {
+                properties.put(prefix + "groupId", groupId);
+                properties.put(prefix + "artifactId", model.getArtifactId());
+                properties.put(prefix + "version", version);
+            }
+
+            if (model.getParent() != null) {
+                properties.put("project.parent.groupId", model.getParent().getGroupId());
+                properties.put("project.parent.version", model.getParent().getVersion());
+                properties.put("parent.version", model.getParent().getVersion());
+            }
+
+            for (Model declaringModel : getModelsNearestFirst()) {
+                if (declaringModel.getDependencyManagement() != null) {
+                    for (Dependency managedDependency : declaringModel.getDependencyManagement().getDependencies()) {
+                        managedVersions.putIfAbsent(interpolate(managedDependency.getManagementKey()), interpolate(managedDependency.getVersion()));
+                    }
+                }
+            }
+        }
+
+        @NotNull
+        private String getVersion() {
+            return properties.get("project.version");
+        }
+
+        private void addProperties(@NotNull Model declaringModel) {
+            for (String propertyName : declaringModel.getProperties().stringPropertyNames()) {
+                properties.put(propertyName, declaringModel.getProperties().getProperty(propertyName));
+            }
+        }
+
+        @NotNull
+        private List<Model> getModelsNearestFirst() {
+            List<Model> models = new ArrayList<>(ancestors.size() + 1);
+            models.add(model);
+            models.addAll(ancestors);
+
+            return models;
+        }
+
+        /*
+            Dependencies of the POM and of its ancestors, with their properties interpolated and managed versions applied.
+         */
+        @NotNull
+        private List<Dependency> getDependencies() {
+            List<Dependency> dependencies = new ArrayList<>();
+
+            for (Model declaringModel : getModelsNearestFirst()) {
+                for (Dependency declaredDependency : declaringModel.getDependencies()) {
+                    Dependency dependency = new Dependency();
+                    dependency.setGroupId(interpolate(declaredDependency.getGroupId()));
+                    dependency.setArtifactId(interpolate(declaredDependency.getArtifactId()));
+                    dependency.setClassifier(interpolate(declaredDependency.getClassifier()));
+                    dependency.setType(interpolate(declaredDependency.getType()));
+                    dependency.setScope(interpolate(declaredDependency.getScope()));
+                    dependency.setOptional(declaredDependency.isOptional());
+                    dependency.setExclusions(declaredDependency.getExclusions());
+                    dependency.setVersion(declaredDependency.getVersion() != null ?
+                            interpolate(declaredDependency.getVersion()) : managedVersions.get(dependency.getManagementKey()));
+
+                    dependencies.add(dependency);
+                }
+            }
+
+            return dependencies;
+        }
+
+        @Nullable
+        private String interpolate(@Nullable String value) {
+            if (value == null) {
+                return null;
+            }
+
+            String interpolated = value;
+
+            // Bounded, as properties may refer to one another, or to themselves.
+            for (int pass = 0; pass < 8 && interpolated.contains("${"); pass++) {
+                Matcher propertyReference = PROPERTY_REFERENCE_PATTERN.matcher(interpolated);
+                StringBuffer replaced = new StringBuffer();
+
+                while (propertyReference.find()) {
+                    String propertyValue = properties.get(propertyReference.group(1));
+                    propertyReference.appendReplacement(replaced, Matcher.quoteReplacement(propertyValue != null ? propertyValue : propertyReference.group()));
+                }
+
+                propertyReference.appendTail(replaced);
+
+                if (replaced.toString().equals(interpolated)) {
+                    break;
+                }
+
+                interpolated = replaced.toString();
+            }
+
+            return interpolated;
+        }
+    }
+
+    /**
+        An artifact reached in the dependency graph, with the exclusions of the path by which it was reached.
+     */
+    private static class Artifact {
+        private final String groupId;
+        private final String artifactId;
+        private final String classifier;
+        private final String type;
+        private final Set<String> exclusions;
+
+        private String version;
+        private URL repository;
+
+        private Artifact(@NotNull Dependency dependency, @NotNull Set<String> inheritedExclusions) {
+            this.groupId = dependency.getGroupId();
+            this.artifactId = dependency.getArtifactId();
+            this.version = dependency.getVersion();
+            this.classifier = dependency.getClassifier() == null || dependency.getClassifier().isEmpty() ? null : dependency.getClassifier();
+            this.type = dependency.getType() == null ? "jar" : dependency.getType();
+
+            this.exclusions = new HashSet<>(inheritedExclusions);
+
+            for (Exclusion exclusion : dependency.getExclusions()) {
+                exclusions.add(exclusion.getGroupId() + ":" + exclusion.getArtifactId());
+            }
+        }
+
+        private boolean excludes(@NotNull Dependency dependency) {
+            return exclusions.contains(dependency.getGroupId() + ":" + dependency.getArtifactId())
+                    || exclusions.contains(dependency.getGroupId() + ":*")
+                    || exclusions.contains("*:*");
+        }
+
+        /*
+            Artifacts of the same key are the same artifact, whatever their version.
+         */
+        @NotNull
+        private String getKey() {
+            return groupId + ":" + artifactId + ":" + type + (classifier == null ? "" : ":" + classifier);
+        }
+
+        @NotNull
+        private String getCoordinate() {
+            return groupId + ":" + artifactId + ":" + version;
+        }
+
+        @NotNull
+        private String getFileName() {
+            return artifactId + "-" + version + (classifier == null ? "" : "-" + classifier) + ".jar";
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + ":" + version;
+        }
+    }
+}
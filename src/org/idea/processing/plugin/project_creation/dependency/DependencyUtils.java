@@ -18,14 +18,16 @@
 
 package org.idea.processing.plugin.project_creation.dependency;
 
-import com.intellij.openapi.util.io.StreamUtil;
 import com.intellij.util.net.HttpConfigurable;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
-import java.net.HttpURLConnection;
+import java.io.InputStream;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
-import java.util.Collection;
+import java.net.URLConnection;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.regex.Matcher;
@@ -33,40 +35,109 @@ import java.util.regex.Pattern;
 
 public class DependencyUtils {
 
-    public static final Pattern ARTIFACT_ROOT_VERSION_PATTERN = Pattern.compile("href=\"(.*)/\"");
+    public static final String MAVEN_METADATA_FILE_NAME = "maven-metadata.xml";
 
-    public static Map<Version, String> getAvailableArtifactVersions(String groupId, String artifactId, Collection<URL> repositories) throws IOException {
-        Map<Version, String> availableVersions = new TreeMap<>(Version.descendingOrderComparator());
+    /*
+        The last path segment of a link to a directory, whether the link is relative, absolute, or a complete URL.
+     */
+    public static final Pattern ARTIFACT_ROOT_VERSION_PATTERN = Pattern.compile("href=\"(?:[^\"]*/)?([^\"/]+)/\"");
 
-        final String relativePathToArtifact = groupId.replace(".", "/") + "/" + artifactId.replace(".", "/");
+    /*
+        The directory of the artifact in a repository of the Maven layout, in which the dots of the group ID separate
+        directories, and those of the artifact ID are kept.
+     */
+    public static String getArtifactLocation(URL repository, String groupId, String artifactId) {
+        return repository.toExternalForm() + "/" + groupId.replace(".", "/") + "/" + artifactId;
+    }
 
-        String artifactLocation;
-        for (final URL repository : repositories) {
-            artifactLocation = repository.toExternalForm() + "/" + relativePathToArtifact;
+    /*
+        Remote locations are opened through the proxy settings of the IDE, and file locations, such as those of a local mirror,
+        directly. Queries of repositories open their connections through {@link RepositoryQueries.Connections} instead, which
+        sets their timeouts.
+     */
+    public static URLConnection openConnection(String location) throws IOException {
+        if (location.startsWith("file:")) {
+            return new URL(location).openConnection();
+        }
 
-            HttpURLConnection artifactRootConnection = HttpConfigurable.getInstance().openHttpConnection(artifactLocation);
-            String artifactRootPage = StreamUtil.readText(artifactRootConnection.getInputStream(), StandardCharsets.UTF_8);
+        return HttpConfigurable.getInstance().openHttpConnection(location);
+    }
 
-            Matcher artifactVersionMatcher = ARTIFACT_ROOT_VERSION_PATTERN.matcher(artifactRootPage);
+    /*
+        A streaming reader of repository metadata. Metadata comes from remote repositories, so DTDs and external entities are
+        not processed.
+     */
+    public static XMLStreamReader createMetadataReader(InputStream metadataStream) throws XMLStreamException {
+        XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
 
-            while (artifactVersionMatcher.find()) {
-                String matchedVersion = artifactVersionMatcher.group(1);
+        return xmlInputFactory.createXMLStreamReader(metadataStream);
+    }
 
-                Version parsedVersion = Version.parseString(matchedVersion);
+    /*
+        The versions listed in the maven-metadata.xml of an artifact, each with the URL of its directory. The metadata is
+        streamed, rather than read whole.
+     */
+    public static Map<Version, String> parseMetadataVersions(String artifactLocation, InputStream metadataStream) throws IOException {
+        Map<Version, String> availableVersions = new TreeMap<>(Version.descendingOrderComparator());
 
-                if (parsedVersion != Version.INVALID) {
-                    String versionUrl = repository.toExternalForm() + "/" + relativePathToArtifact + "/" + parsedVersion.toString();
-                    availableVersions.put(parsedVersion, versionUrl);
+        try {
+            XMLStreamReader metadataReader = createMetadataReader(metadataStream);
+
+            try {
+                boolean inVersions = false;
+
+                while (metadataReader.hasNext()) {
+                    int event = metadataReader.next();
+
+                    if (event == XMLStreamConstants.START_ELEMENT && metadataReader.getLocalName().equals("versions")) {
+                        inVersions = true;
+                    } else if (event == XMLStreamConstants.END_ELEMENT && metadataReader.getLocalName().equals("versions")) {
+                        inVersions = false;
+                    } else if (event == XMLStreamConstants.START_ELEMENT && inVersions && metadataReader.getLocalName().equals("version")) {
+                        addVersion(availableVersions, artifactLocation, metadataReader.getElementText().trim());
+                    }
                 }
+            } finally {
+                metadataReader.close();
             }
+        } catch (XMLStreamException xse) {
+            throw new IOException("The metadata of '" + artifactLocation + "' is not valid: " + xse.getMessage(), xse);
+        }
+
+        return availableVersions;
+    }
 
-            artifactRootConnection.disconnect();
+    /*
+        The versions listed in the directory listing of an artifact root, each with the URL of its directory. Listings of file
+        locations name one entry on each line, rather than linking to them.
+     */
+    public static Map<Version, String> parseDirectoryListing(String artifactLocation, String artifactRootPage) {
+        Map<Version, String> availableVersions = new TreeMap<>(Version.descendingOrderComparator());
 
-            if (! availableVersions.isEmpty()) {
-                break;
+        if (! artifactRootPage.contains("href=")) {
+            for (String entryName : artifactRootPage.split("\\R")) {
+                addVersion(availableVersions, artifactLocation, entryName.trim());
             }
+
+            return availableVersions;
+        }
+
+        Matcher artifactVersionMatcher = ARTIFACT_ROOT_VERSION_PATTERN.matcher(artifactRootPage);
+
+        while (artifactVersionMatcher.find()) {
+            addVersion(availableVersions, artifactLocation, artifactVersionMatcher.group(1));
         }
 
         return availableVersions;
     }
+
+    private static void addVersion(Map<Version, String> availableVersions, String artifactLocation, String listedVersion) {
+        Version parsedVersion = Version.parseString(listedVersion);
+
+        if (parsedVersion != Version.INVALID) {
+            availableVersions.put(parsedVersion, artifactLocation + "/" + parsedVersion.toString());
+        }
+    }
 }
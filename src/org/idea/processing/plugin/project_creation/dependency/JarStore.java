@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.project_creation.dependency;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+    Content-addressed store of downloaded jars, shared by every Processing version installed under the dependency root. Each
+    jar is stored once, at '.store/&lt;first two digits of its SHA-1&gt;/&lt;SHA-1&gt;.jar', and the directory of each version
+    holds hard links to the jars it uses, so that a jar used by several versions, such as those of JOGL and its natives, takes
+    up space, and is downloaded, only once. Jars are copied out of the store where the file system cannot link them.
+ */
+public class JarStore {
+
+    private final Logger logger = com.intellij.openapi.diagnostic.Logger.getInstance(JarStore.class);
+
+    static final String STORE_DIRECTORY_NAME = ".store";
+
+    private static final Pattern SHA1_PATTERN = Pattern.compile("[0-9a-fA-F]{40}");
+
+    private final File storeDirectory;
+
+    public JarStore(@NotNull File dependencyRoot) {
+        this.storeDirectory = new File(dependencyRoot, STORE_DIRECTORY_NAME);
+    }
+
+    /*
+        Whether the text is a SHA-1 checksum, i.e. 40 hexadecimal digits. Only such checksums name files in the store.
+     */
+    public static boolean isSha1(@NotNull String text) {
+        return SHA1_PATTERN.matcher(text).matches();
+    }
+
+    /*
+        The stored jar of the given checksum, or null where no such jar has been stored.
+     */
+    @Nullable
+    public File find(@NotNull String sha1) {
+        if (! isSha1(sha1)) {
+            return null;
+        }
+
+        File storedJar = getStoredJar(sha1);
+
+        return storedJar.isFile() ? storedJar : null;
+    }
+
+    /*
+        Moves a downloaded jar, whose checksum has been verified, into the store. Where a jar of the same checksum has been
+        stored in the meantime, the downloaded jar is discarded in favour of it.
+     */
+    @NotNull
+    public File store(@NotNull File verifiedJar, @NotNull String sha1) throws IOException {
+        File storedJar = getStoredJar(sha1);
+
+        Files.createDirectories(storedJar.getParentFile().toPath());
+
+        try {
+            Files.move(verifiedJar.toPath(), storedJar.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException alreadyStored) {
+            Files.deleteIfExists(verifiedJar.toPath());
+        } catch (AtomicMoveNotSupportedException atomicMoveNotSupported) {
+            if (! storedJar.isFile()) {
+                Files.move(verifiedJar.toPath(), storedJar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.deleteIfExists(verifiedJar.toPath());
+            }
+        }
+
+        return storedJar;
+    }
+
+    /*
+        Hard links the target to the stored jar, or copies the stored jar to the target where links are unsupported, e.g.
+        across file systems.
+     */
+    public void linkInto(@NotNull File storedJar, @NotNull File target) throws IOException {
+        Files.deleteIfExists(target.toPath());
+
+        try {
+            Files.createLink(target.toPath(), storedJar.toPath());
+        } catch (IOException | UnsupportedOperationException | SecurityException linkFailure) {
+            logger.debug("Cannot link '" + target + "' to '" + storedJar + "', falling back to a copy: " + linkFailure.getMessage());
+            Files.copy(storedJar.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @NotNull
+    private File getStoredJar(@NotNull String sha1) {
+        if (! isSha1(sha1)) {
+            throw new IllegalArgumentException("'" + sha1 + "' is not a SHA-1 checksum.");
+        }
+
+        String normalisedSha1 = sha1.toLowerCase(Locale.ROOT);
+
+        return new File(new File(storeDirectory, normalisedSha1.substring(0, 2)), normalisedSha1 + ".jar");
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.project_creation.dependency;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.Alarm;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+    Queries the artifact repositories concurrently, taking the first valid response. Repositories are queried in order of
+    their measured latency and recent failures, which are kept between sessions. The best ranked repository is queried first,
+    and each of the others is queried in turn where no response has been received within a short delay, or at once where
+    every query so far has failed. Queries still outstanding once a valid response has been received are cancelled.
+
+    Every connection is made with connect and read timeouts, so that an unreachable repository cannot stall the query.
+
+    Statistics are written a short while after they change, rather than after every query, and once more when the service is
+    disposed.
+ */
+public class RepositoryQueries implements Disposable {
+
+    private final Logger logger = com.intellij.openapi.diagnostic.Logger.getInstance(RepositoryQueries.class);
+
+    private static final int CONNECT_TIMEOUT_MILLIS = Integer.parseInt(DependencyResolutionBundle.key("repository_connect_timeout_millis"));
+    private static final int READ_TIMEOUT_MILLIS = Integer.parseInt(DependencyResolutionBundle.key("repository_read_timeout_millis"));
+    private static final long HEDGE_DELAY_MILLIS = Long.parseLong(DependencyResolutionBundle.key("repository_hedge_delay_millis"));
+    private static final int STATISTICS_WRITE_DELAY_MILLIS = Integer.parseInt(DependencyResolutionBundle.key("repository_statistics_write_delay_millis"));
+
+    /*
+        Weight of the most recent response in the moving average of the latency of a repository.
+     */
+    private static final double LATENCY_SMOOTHING = 0.3;
+
+    private static final String STATISTICS_FILE_NAME = "processing-idea/repository-statistics.properties";
+
+    private final ExecutorService executor;
+    private final File statisticsFile;
+    private final Map<String, RepositoryStatistics> statisticsByRepository = new ConcurrentHashMap<>();
+    private final AtomicBoolean statisticsDirty = new AtomicBoolean();
+    private final Alarm statisticsWriteAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, this);
+
+    public RepositoryQueries() {
+        this(new File(PathManager.getSystemPath(), STATISTICS_FILE_NAME));
+    }
+
+    RepositoryQueries(@NotNull File statisticsFile) {
+        AtomicInteger threadCount = new AtomicInteger();
+
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread queryThread = new Thread(runnable, "Processing Repository Query " + threadCount.incrementAndGet());
+            queryThread.setDaemon(true);
+            return queryThread;
+        });
+
+        this.statisticsFile = statisticsFile;
+
+        readStatistics();
+    }
+
+    public static RepositoryQueries getInstance() {
+        return ServiceManager.getService(RepositoryQueries.class);
+    }
+
+    /**
+        A query of a single repository, which opens its connections through the given {@link Connections}, so that they are
+        made with timeouts, and can be cancelled.
+     */
+    @FunctionalInterface
+    public interface Query<T> {
+
+        /*
+            The response of the repository, or null where the repository does not have what was asked of it.
+         */
+        @Nullable
+        T query(@NotNull URL repository, @NotNull Connections connections) throws IOException;
+    }
+
+    /*
+        The first valid response of any of the repositories, or null where none of them had what was asked of them. Where no
+        repository responded at all, the failure of the last to fail is thrown.
+     */
+    @Nullable
+    public <T> T queryFirst(@NotNull Collection<URL> repositories, @NotNull Query<T> query) throws IOException {
+        List<URL> rankedRepositories = rank(repositories);
+
+        CompletionService<Attempt<T>> attempts = new ExecutorCompletionService<>(executor);
+        List<Future<Attempt<T>>> startedAttempts = new ArrayList<>(rankedRepositories.size());
+        List<Connections> startedConnections = new ArrayList<>(rankedRepositories.size());
+
+        IOException lastFailure = null;
+        int completedAttempts = 0;
+
+        try {
+            while (completedAttempts < rankedRepositories.size()) {
+                if (startedAttempts.size() == completedAttempts) {
+                    startAttempt(rankedRepositories.get(startedAttempts.size()), query, attempts, startedAttempts, startedConnections);
+                }
+
+                Future<Attempt<T>> completedAttempt = startedAttempts.size() < rankedRepositories.size() ?
+                        attempts.poll(HEDGE_DELAY_MILLIS, TimeUnit.MILLISECONDS) : attempts.take();
+
+                if (completedAttempt == null) {
+                    // The queries started so far are slow to respond; hedge with the next repository.
+                    startAttempt(rankedRepositories.get(startedAttempts.size()), query, attempts, startedAttempts, startedConnections);
+                    continue;
+                }
+
+                completedAttempts++;
+
+                Attempt<T> attempt = completedAttempt.get();
+
+                if (attempt.response != null) {
+                    logger.debug("'" + attempt.repository + "' responded first, of " + startedAttempts.size() + " repositories queried.");
+                    return attempt.response;
+                }
+
+                if (attempt.failure != null) {
+                    lastFailure = attempt.failure;
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted whilst querying repositories.");
+        } catch (ExecutionException ee) {
+            throw new IOException("Querying repositories failed.", ee.getCause());
+        } finally {
+            for (Connections connections : startedConnections) {
+                connections.cancel();
+            }
+
+            for (Future<Attempt<T>> startedAttempt : startedAttempts) {
+                startedAttempt.cancel(true);
+            }
+        }
+
+        if (lastFailure != null) {
+            throw lastFailure;
+        }
+
+        return null;
+    }
+
+    private <T> void startAttempt(@NotNull URL repository, @NotNull Query<T> query, @NotNull CompletionService<Attempt<T>> attempts,
+                                  @NotNull List<Future<Attempt<T>>> startedAttempts, @NotNull List<Connections> startedConnections) {
+        Connections connections = new Connections();
+        startedConnections.add(connections);
+
+        startedAttempts.add(attempts.submit(() -> {
+            long startedAt = System.currentTimeMillis();
+
+            try {
+                T response = query.query(repository, connections);
+                getStatistics(repository).recordResponse(System.currentTimeMillis() - startedAt);
+                markStatisticsDirty();
+
+                return new Attempt<>(repository, response, null);
+            } catch (IOException io) {
+                // Connections closed by the cancellation of the query are not a failure of the repository.
+                if (! connections.isCancelled()) {
+                    logger.info("Query of '" + repository + "' failed: " + io.getMessage());
+                    getStatistics(repository).recordFailure();
+                    markStatisticsDirty();
+                }
+
+                return new Attempt<>(repository, null, io);
+            }
+        }));
+    }
+
+    /*
+        Repositories in order of their expected latency, where a repository is expected to take a connect timeout longer for
+        each of its consecutive failures. Repositories without statistics keep their configured order.
+     */
+    @NotNull
+    List<URL> rank(@NotNull Collection<URL> repositories) {
+        // The expected latencies are taken once, as they may change whilst the repositories are sorted. Repositories are keyed
+        // by their external form, as URL equality resolves host names.
+        Map<String, Double> expectedLatencies = new HashMap<>();
+
+        for (URL repository : repositories) {
+            expectedLatencies.put(repository.toExternalForm(), getStatistics(repository).getExpectedLatencyMillis());
+        }
+
+        List<URL> rankedRepositories = new ArrayList<>(repositories);
+        rankedRepositories.sort(Comparator.comparingDouble(repository -> expectedLatencies.get(repository.toExternalForm())));
+
+        return rankedRepositories;
+    }
+
+    @NotNull
+    private RepositoryStatistics getStatistics(@NotNull URL repository) {
+        return statisticsByRepository.computeIfAbsent(repository.toExternalForm(), key -> new RepositoryStatistics());
+    }
+
+    private void readStatistics() {
+        if (! statisticsFile.isFile()) {
+            return;
+        }
+
+        Properties statistics = new Properties();
+
+        try (InputStream statisticsStream = new FileInputStream(statisticsFile)) {
+            statistics.load(statisticsStream);
+
+            for (String repository : statistics.stringPropertyNames()) {
+                statisticsByRepository.put(repository, RepositoryStatistics.parse(statistics.getProperty(repository)));
+            }
+        } catch (IOException | IllegalArgumentException invalid) {
+            logger.warn("Unable to read repository statistics from '" + statisticsFile + "'. They will be gathered again.", invalid);
+            statisticsByRepository.clear();
+        }
+    }
+
+    /*
+        Schedule the statistics to be written, unless a write is already pending.
+     */
+    private void markStatisticsDirty() {
+        if (statisticsDirty.compareAndSet(false, true) && ! statisticsWriteAlarm.isDisposed()) {
+            statisticsWriteAlarm.addRequest(this::writeStatistics, STATISTICS_WRITE_DELAY_MILLIS);
+        }
+    }
+
+    private synchronized void writeStatistics() {
+        if (! statisticsDirty.getAndSet(false)) {
+            return;
+        }
+
+        Properties statistics = new Properties();
+
+        for (Map.Entry<String, RepositoryStatistics> repositoryStatistics : statisticsByRepository.entrySet()) {
+            statistics.setProperty(repositoryStatistics.getKey(), repositoryStatistics.getValue().toString());
+        }
+
+        File temporaryFile = new File(statisticsFile.getPath() + ".tmp");
+
+        try {
+            Files.createDirectories(statisticsFile.getParentFile().toPath());
+
+            try (OutputStream statisticsStream = new FileOutputStream(temporaryFile)) {
+                statistics.store(statisticsStream, "Latency (ms) and consecutive failures of artifact repositories");
+            }
+
+            Files.move(temporaryFile.toPath(), statisticsFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException io) {
+            logger.warn("Unable to write repository statistics to '" + statisticsFile + "'.", io);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        executor.shutdownNow();
+
+        // Any write still pending was cancelled with the alarm.
+        writeStatistics();
+    }
+
+    /**
+        The connections opened by the query of a single repository.
+     */
+    public static class Connections {
+        private final List<URLConnection> openedConnections = new ArrayList<>(2);
+        private boolean cancelled;
+
+        /*
+            Opens a connection to the given location, with the connect and read timeouts of repository queries.
+         */
+        @NotNull
+        public synchronized URLConnection open(@NotNull String location) throws IOException {
+            if (cancelled) {
+                throw new InterruptedIOException("The query of '" + location + "' has been cancelled.");
+            }
+
+            URLConnection connection = DependencyUtils.openConnection(location);
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+
+            openedConnections.add(connection);
+
+            return connection;
+        }
+
+        synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        private synchronized void cancel() {
+            cancelled = true;
+
+            for (URLConnection connection : openedConnections) {
+                if (connection instanceof HttpURLConnection) {
+                    ((HttpURLConnection) connection).disconnect();
+                }
+            }
+        }
+    }
+
+    private static class Attempt<T> {
+        private final URL repository;
+        private final T response;
+        private final IOException failure;
+
+        private Attempt(@NotNull URL repository, @Nullable T response, @Nullable IOException failure) {
+            this.repository = repository;
+            this.response = response;
+            this.failure = failure;
+        }
+    }
+
+    private static class RepositoryStatistics {
+        private double latencyMillis = -1;
+        private int consecutiveFailures;
+
+        @NotNull
+        private static RepositoryStatistics parse(@NotNull String value) {
+            String[] fields = value.split(",");
+
+            RepositoryStatistics statistics = new RepositoryStatistics();
+            statistics.latencyMillis = Double.parseDouble(fields[0]);
+            statistics.consecutiveFailures = Integer.parseInt(fields[1]);
+
+            return statistics;
+        }
+
+        private synchronized void recordResponse(long latencyMillis) {
+            this.latencyMillis = this.latencyMillis < 0 ? latencyMillis :
+                    LATENCY_SMOOTHING * latencyMillis + (1 - LATENCY_SMOOTHING) * this.latencyMillis;
+            consecutiveFailures = 0;
+        }
+
+        private synchronized void recordFailure() {
+            consecutiveFailures++;
+        }
+
+        /*
+            Repositories yet to respond are expected to take as long as the hedging delay, so that a repository known to be
+            fast is preferred, but one known to be slow is not.
+         */
+        private synchronized double getExpectedLatencyMillis() {
+            return (latencyMillis < 0 ? HEDGE_DELAY_MILLIS : latencyMillis) + (double) consecutiveFailures * CONNECT_TIMEOUT_MILLIS;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return Math.round(latencyMillis) + "," + consecutiveFailures;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.project_creation.dependency;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.StreamUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+    Catalog of the versions of an artifact available for download, kept on disk under the dependency root so that the versions
+    are listed without querying the remote repositories each time the project wizard is opened.
+
+    The catalog is refreshed once it is older than its time to live, which may be overridden with the
+    'processing.version.catalog.ttl.hours' system property. Refreshes are conditional requests, using the ETag and Last-Modified
+    validators of the previous response, so that unchanged metadata is not downloaded again. Where no repository can be
+    reached, the cached catalog is used as it is.
+ */
+public class VersionCatalogCache {
+
+    private final Logger logger = com.intellij.openapi.diagnostic.Logger.getInstance(VersionCatalogCache.class);
+
+    private static final long TIME_TO_LIVE_MILLIS = TimeUnit.HOURS.toMillis(
+            Long.getLong("processing.version.catalog.ttl.hours", Long.parseLong(DependencyResolutionBundle.key("version_catalog_ttl_hours"))));
+
+    private static final String FETCHED_AT_KEY = "fetchedAt";
+    private static final String LOCATION_KEY = "location";
+    private static final String ETAG_KEY = "etag";
+    private static final String LAST_MODIFIED_KEY = "lastModified";
+    private static final String VERSION_KEY_PREFIX = "version.";
+
+    private final File catalogFile;
+    private final String groupId;
+    private final String artifactId;
+
+    public VersionCatalogCache(@NotNull File dependencyRoot, @NotNull String groupId, @NotNull String artifactId) {
+        this.catalogFile = new File(dependencyRoot, "version-catalog-" + groupId + "-" + artifactId + ".properties");
+        this.groupId = groupId;
+        this.artifactId = artifactId;
+    }
+
+    /*
+        The versions in the catalog, whether or not it has expired, or an empty map where no catalog has been cached.
+     */
+    @NotNull
+    public Map<Version, String> getCachedVersions() {
+        return readVersions(readCatalog());
+    }
+
+    public boolean isExpired() {
+        String fetchedAt = readCatalog().getProperty(FETCHED_AT_KEY);
+
+        return fetchedAt == null || System.currentTimeMillis() - Long.parseLong(fetchedAt) > TIME_TO_LIVE_MILLIS;
+    }
+
+    /*
+        Queries the repositories for the versions of the artifact, through {@link RepositoryQueries}, and caches the versions
+        listed by the first repository to list any. Each repository is asked for the maven-metadata.xml of the artifact, and its
+        directory listing is read only where it has no metadata. The location that provided the cached catalog is asked only
+        whether it has changed. The cached versions are returned where no repository can be reached.
+     */
+    @NotNull
+    public synchronized Map<Version, String> refresh(@NotNull Collection<URL> repositories) throws IOException {
+        Properties catalog = readCatalog();
+        Properties refreshedCatalog = null;
+        IOException failure = null;
+
+        try {
+            refreshedCatalog = RepositoryQueries.getInstance().queryFirst(repositories, (repository, connections) -> {
+                String artifactLocation = DependencyUtils.getArtifactLocation(repository, groupId, artifactId);
+
+                try {
+                    Properties metadataCatalog = fetchCatalog(artifactLocation + "/" + DependencyUtils.MAVEN_METADATA_FILE_NAME,
+                            artifactLocation, catalog, connections);
+
+                    if (metadataCatalog != null) {
+                        return metadataCatalog;
+                    }
+                } catch (IOException io) {
+                    logger.info("Unable to read the metadata of '" + artifactLocation + "'. Its directory listing will be read instead: " + io.getMessage());
+                }
+
+                return fetchCatalog(artifactLocation, artifactLocation, catalog, connections);
+            });
+        } catch (IOException io) {
+            failure = io;
+        }
+
+        if (refreshedCatalog != null) {
+            writeCatalog(refreshedCatalog);
+            return readVersions(refreshedCatalog);
+        }
+
+        Map<Version, String> cachedVersions = readVersions(catalog);
+
+        if (cachedVersions.isEmpty() && failure != null) {
+            throw failure;
+        }
+
+        logger.info("Using the " + cachedVersions.size() + " cached versions of " + groupId + ":" + artifactId + ".");
+
+        return cachedVersions;
+    }
+
+    /*
+        A catalog of the versions listed at the given location, or null where it lists none. Where the location has not changed
+        since the cached catalog was fetched from it, the cached catalog is renewed instead.
+     */
+    @Nullable
+    private Properties fetchCatalog(@NotNull String catalogLocation, @NotNull String artifactLocation, @NotNull Properties catalog,
+                                    @NotNull RepositoryQueries.Connections connections) throws IOException {
+        URLConnection catalogConnection = connections.open(catalogLocation);
+
+        if (catalogLocation.equals(catalog.getProperty(LOCATION_KEY))) {
+            if (catalog.getProperty(ETAG_KEY) != null) {
+                catalogConnection.setRequestProperty("If-None-Match", catalog.getProperty(ETAG_KEY));
+            }
+
+            if (catalog.getProperty(LAST_MODIFIED_KEY) != null) {
+                catalogConnection.setRequestProperty("If-Modified-Since", catalog.getProperty(LAST_MODIFIED_KEY));
+            }
+        }
+
+        try {
+            if (catalogConnection instanceof HttpURLConnection &&
+                    ((HttpURLConnection) catalogConnection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                logger.debug("The versions listed at '" + catalogLocation + "' have not changed since they were cached.");
+
+                Properties renewedCatalog = new Properties();
+                renewedCatalog.putAll(catalog);
+                renewedCatalog.setProperty(FETCHED_AT_KEY, Long.toString(System.currentTimeMillis()));
+
+                return renewedCatalog;
+            }
+
+            Map<Version, String> availableVersions;
+
+            try (InputStream catalogStream = catalogConnection.getInputStream()) {
+                availableVersions = catalogLocation.equals(artifactLocation) ?
+                        DependencyUtils.parseDirectoryListing(artifactLocation, StreamUtil.readText(catalogStream, StandardCharsets.UTF_8)) :
+                        DependencyUtils.parseMetadataVersions(artifactLocation, catalogStream);
+            }
+
+            return availableVersions.isEmpty() ? null : createCatalog(catalogLocation, catalogConnection, availableVersions);
+        } finally {
+            if (catalogConnection instanceof HttpURLConnection) {
+                ((HttpURLConnection) catalogConnection).disconnect();
+            }
+        }
+    }
+
+    @NotNull
+    private static Properties createCatalog(@NotNull String catalogLocation, @NotNull URLConnection catalogConnection,
+                                            @NotNull Map<Version, String> availableVersions) {
+        Properties catalog = new Properties();
+        catalog.setProperty(FETCHED_AT_KEY, Long.toString(System.currentTimeMillis()));
+        catalog.setProperty(LOCATION_KEY, catalogLocation);
+
+        if (catalogConnection.getHeaderField("ETag") != null) {
+            catalog.setProperty(ETAG_KEY, catalogConnection.getHeaderField("ETag"));
+        }
+
+        if (catalogConnection.getHeaderField("Last-Modified") != null) {
+            catalog.setProperty(LAST_MODIFIED_KEY, catalogConnection.getHeaderField("Last-Modified"));
+        }
+
+        for (Map.Entry<Version, String> availableVersion : availableVersions.entrySet()) {
+            catalog.setProperty(VERSION_KEY_PREFIX + availableVersion.getKey(), availableVersion.getValue());
+        }
+
+        return catalog;
+    }
+
+    @NotNull
+    private static Map<Version, String> readVersions(@NotNull Properties catalog) {
+        Map<Version, String> cachedVersions = new TreeMap<>(Version.descendingOrderComparator());
+
+        for (String key : catalog.stringPropertyNames()) {
+            if (key.startsWith(VERSION_KEY_PREFIX)) {
+                Version cachedVersion = Version.parseString(key.substring(VERSION_KEY_PREFIX.length()));
+
+                if (cachedVersion != Version.INVALID) {
+                    cachedVersions.put(cachedVersion, catalog.getProperty(key));
+                }
+            }
+        }
+
+        return cachedVersions;
+    }
+
+    @NotNull
+    private Properties readCatalog() {
+        Properties catalog = new Properties();
+
+        if (! catalogFile.isFile()) {
+            return catalog;
+        }
+
+        try (InputStream catalogStream = new FileInputStream(catalogFile)) {
+            catalog.load(catalogStream);
+        } catch (IOException | IllegalArgumentException invalid) {
+            logger.warn("Unable to read the version catalog '" + catalogFile + "'. It will be fetched again.", invalid);
+            return new Properties();
+        }
+
+        return catalog;
+    }
+
+    /*
+        Written to a temporary file that then replaces the catalog, so that a catalog is never read part written.
+     */
+    private void writeCatalog(@NotNull Properties catalog) {
+        File temporaryFile = new File(catalogFile.getPath() + ".tmp");
+
+        try {
+            Files.createDirectories(catalogFile.getParentFile().toPath());
+
+            try (OutputStream catalogStream = new FileOutputStream(temporaryFile)) {
+                catalog.store(catalogStream, "Versions of " + groupId + ":" + artifactId);
+            }
+
+            Files.move(temporaryFile.toPath(), catalogFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException io) {
+            logger.warn("Unable to write the version catalog '" + catalogFile + "'.", io);
+        }
+    }
+}
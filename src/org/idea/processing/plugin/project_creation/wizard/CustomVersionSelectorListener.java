@@ -19,11 +19,13 @@
 package org.idea.processing.plugin.project_creation.wizard;
 
 import com.intellij.ide.plugins.PluginManager;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.extensions.PluginId;
 import com.intellij.openapi.ui.TextFieldWithBrowseButton;
-import org.idea.processing.plugin.project_creation.dependency.DependencyUtils;
 import org.idea.processing.plugin.project_creation.dependency.Version;
+import org.idea.processing.plugin.project_creation.dependency.VersionCatalogCache;
 import org.jetbrains.annotations.Nullable;
 import org.idea.processing.plugin.project_creation.dependency.DependencyResolutionBundle;
 
@@ -153,49 +155,72 @@ class CustomVersionSelectorListener implements ItemListener {
         }
     }
 
+    /*
+        Versions in the cached catalog are listed at once. The catalog is then refreshed in the background where it has expired,
+        and any versions it did not already list are added.
+     */
     private void populateVersionSelectorWithAvailableVersions(final File processingDependencyDirectory) {
+        VersionCatalogCache versionCatalog = new VersionCatalogCache(processingDependencyDirectory, "org.processing", "core");
+
+        Map<Version, String> cachedProcessingVersions = versionCatalog.getCachedVersions();
+
+        if (! cachedProcessingVersions.isEmpty()) {
+            logger.info("Identified " + cachedProcessingVersions.size() + " cached downloadable Processing library versions.");
+            addAvailableVersions(processingDependencyDirectory, cachedProcessingVersions);
+
+            if (! versionCatalog.isExpired()) {
+                return;
+            }
+        }
+
         logger.debug("Initializing available version population thread.");
 
         new Thread(() -> {
             try {
-                Map<Version, String> availableProcessingVersions = DependencyUtils.getAvailableArtifactVersions(
-                        "org.processing",
-                        "core",
-                        DependencyResolutionBundle.getCentralRepos());
+                Map<Version, String> availableProcessingVersions = versionCatalog.refresh(DependencyResolutionBundle.getCentralRepos());
 
-                versionSelectComboBox.addItem(new JSeparator(JSeparator.HORIZONTAL));
-                versionSelectComboBox.addItem(VersionComboHeaders.AVAILABLE.toString());
+                logger.info("Identified " + availableProcessingVersions.size() + " downloadable Processing library versions.");
 
-                if (availableProcessingVersions.isEmpty()) {
-                    versionSelectComboBox.addItem(VersionComboHeaders.NONE.toString());
-                    return;
-                }
+                ApplicationManager.getApplication().invokeLater(() ->
+                        addAvailableVersions(processingDependencyDirectory, availableProcessingVersions), ModalityState.any());
+            } catch (IOException io) {
+                ApplicationManager.getApplication().invokeLater(() -> {
+                    versionAnalysisProgressIcon.setVisible(false);
+                    versionResolutionErrorLabel.setText("Querying downloadable Processing library versions failed");
+                }, ModalityState.any());
+                logger.error("Querying Processing versions from remote repository failed.", io);
+            }
+        }).start();
+    }
 
-                logger.info("Identified " + availableProcessingVersions.size() + " downloadable Processing library versions.");
+    private void addAvailableVersions(final File processingDependencyDirectory, final Map<Version, String> availableProcessingVersions) {
+        if (! versionComboBoxContains(VersionComboHeaders.AVAILABLE.toString())) {
+            versionSelectComboBox.addItem(new JSeparator(JSeparator.HORIZONTAL));
+            versionSelectComboBox.addItem(VersionComboHeaders.AVAILABLE.toString());
 
-                for (Map.Entry<Version, String> availableVersion : availableProcessingVersions.entrySet()) {
-                    Version version = availableVersion.getKey();
+            if (availableProcessingVersions.isEmpty()) {
+                versionSelectComboBox.addItem(VersionComboHeaders.NONE.toString());
+            }
+        }
 
-                    String earliestProcessingSupported = DependencyResolutionBundle.key("earliest_processing_version_supported");
+        String earliestProcessingSupported = DependencyResolutionBundle.key("earliest_processing_version_supported");
 
-                    if (version.compareTo(Version.parseString(earliestProcessingSupported)) >= 0) {
-                        VersionSelectorComboItem comboItem = new VersionSelectorComboItem(version,
-                                new File(processingDependencyDirectory, version.toString()).getPath());
+        for (Map.Entry<Version, String> availableVersion : availableProcessingVersions.entrySet()) {
+            Version version = availableVersion.getKey();
 
-                        if (versionComboBoxContains(comboItem)) {
-                            continue;
-                        }
+            if (version.compareTo(Version.parseString(earliestProcessingSupported)) >= 0) {
+                VersionSelectorComboItem comboItem = new VersionSelectorComboItem(version,
+                        new File(processingDependencyDirectory, version.toString()).getPath());
 
-                        versionSelectComboBox.addItem(comboItem);
-                    }
+                if (versionComboBoxContains(comboItem)) {
+                    continue;
                 }
 
-                versionAnalysisProgressIcon.setVisible(false);
-            } catch (IOException io) {
-                versionResolutionErrorLabel.setText("Querying downloadable Processing library versions failed");
-                logger.error("Querying Processing versions from remote repository failed.", io);
+                versionSelectComboBox.addItem(comboItem);
             }
-        }).start();
+        }
+
+        versionAnalysisProgressIcon.setVisible(false);
     }
 
     private boolean versionComboBoxContains(@Nullable Object findItem) {
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.pde_import;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.*;
+import com.intellij.testFramework.fixtures.JavaCodeInsightFixtureTestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+    Benchmark of the import pipeline over synthetic sketches of 10, 100 and 1,000 tabs, of small and huge tabs, with and
+    without color types and imports. Reports the time, throughput and allocation of each import phase, so that regressions
+    show up between builds. Runs on a headless test fixture; being named as it is, it is not picked up with the tests.
+
+    The largest sketches may be left out with -Dprocessing.import.benchmark.max.tabs=N.
+ */
+public class ImportBenchmark extends JavaCodeInsightFixtureTestCase {
+
+    private final Logger logger = com.intellij.openapi.diagnostic.Logger.getInstance(ImportBenchmark.class);
+
+    private static final int[] TAB_COUNTS = {10, 100, 1000};
+
+    /*
+        The first scenario of each run is repeated, discarded, so that class loading and JIT compilation are not measured.
+     */
+    private static final int WARM_UP_TAB_COUNT = 10;
+
+    private int scenarioCount;
+
+    /*
+        Parsing waits on the parsing executor, and writing is done on the event dispatch thread, as in an import.
+     */
+    @Override
+    protected boolean runInDispatchThread() {
+        return false;
+    }
+
+    public void testImportPhases() throws IOException, InterruptedException {
+        int maximumTabCount = Integer.getInteger("processing.import.benchmark.max.tabs", Integer.MAX_VALUE);
+        File sketchbookDirectory = FileUtil.createTempDirectory("processing-import-benchmark", null);
+
+        try {
+            runScenario(new SyntheticSketchbook(WARM_UP_TAB_COUNT, SyntheticSketchbook.TabSize.SMALL, true, true), sketchbookDirectory, false);
+
+            System.out.println(BenchmarkPhase.header());
+
+            for (int tabCount : TAB_COUNTS) {
+                if (tabCount > maximumTabCount) {
+                    continue;
+                }
+
+                for (SyntheticSketchbook.TabSize tabSize : SyntheticSketchbook.TabSize.values()) {
+                    for (boolean useColor : new boolean[] {false, true}) {
+                        for (boolean useImports : new boolean[] {false, true}) {
+                            runScenario(new SyntheticSketchbook(tabCount, tabSize, useColor, useImports), sketchbookDirectory, true);
+                        }
+                    }
+                }
+            }
+        } finally {
+            FileUtil.delete(sketchbookDirectory);
+        }
+    }
+
+    private void runScenario(@NotNull SyntheticSketchbook sketch, @NotNull File sketchbookDirectory, boolean report) throws IOException, InterruptedException {
+        List<VirtualFile> tabs = new ArrayList<>();
+        long totalBytes = 0;
+
+        for (File tab : sketch.generate(sketchbookDirectory)) {
+            VirtualFile tabFile = LocalFileSystem.getInstance().refreshAndFindFileByIoFile(tab);
+
+            if (tabFile == null) {
+                throw new IOException("Unable to find the generated tab '" + tab + "'.");
+            }
+
+            tabs.add(tabFile);
+            totalBytes += tab.length();
+        }
+
+        PsiDirectory sketchPackage = createSketchPackage("scenario" + scenarioCount++);
+        PdeConverter converter = new PdeConverter();
+
+        List<BenchmarkPhase> phases = new ArrayList<>();
+
+        /*
+            Preprocessing, which includes the migration of the color type to int, is also part of parseAll; it is timed on
+            its own here to tell its cost apart from that of parsing.
+         */
+        BenchmarkPhase preprocess = BenchmarkPhase.start(sketch, "PdePreprocessor", tabs.size(), totalBytes);
+        for (VirtualFile tab : tabs) {
+            PdePreprocessor.preprocess(VfsUtil.loadText(tab));
+        }
+        phases.add(preprocess.stop());
+
+        BenchmarkPhase parse = BenchmarkPhase.start(sketch, "parseAll", tabs.size(), totalBytes);
+        Collection<PsiFile> parsedTabs = converter.parseAll(getProject(), tabs);
+        phases.add(parse.stop());
+
+        BenchmarkPhase analyse = BenchmarkPhase.start(sketch, "analyze", tabs.size(), totalBytes);
+        List<SketchFileAnalysis> analyses = ApplicationManager.getApplication().runReadAction((Computable<List<SketchFileAnalysis>>) () -> {
+            List<SketchFileAnalysis> analysedTabs = new ArrayList<>(parsedTabs.size());
+
+            for (PsiFile parsedTab : parsedTabs) {
+                analysedTabs.add(SketchFileAnalysis.analyze(parsedTab));
+            }
+
+            return analysedTabs;
+        });
+        phases.add(analyse.stop());
+
+        BenchmarkPhase firstStage = BenchmarkPhase.start(sketch, "firstStageIdentification", tabs.size(), totalBytes);
+        Collection<SketchFileAnalysis> shortlist = MigrationActions.firstStageMainSketchIdentification(analyses);
+        phases.add(firstStage.stop());
+
+        BenchmarkPhase secondStage = BenchmarkPhase.start(sketch, "secondStageIdentification", shortlist.size(), totalBytes);
+        List<MainSketchCandidate> candidates = ApplicationManager.getApplication().runReadAction((Computable<List<MainSketchCandidate>>) () ->
+                MigrationActions.secondStageMainSketchIdentification(shortlist));
+        phases.add(secondStage.stop());
+
+        assertFalse("No main sketch candidate was identified in '" + sketch.getName() + "'.", candidates.isEmpty());
+
+        List<PsiFile> convertedTabs = new ArrayList<>(analyses.size());
+
+        for (SketchFileAnalysis analysis : analyses) {
+            convertedTabs.add(analysis.getSketchFile());
+        }
+
+        BenchmarkPhase write = BenchmarkPhase.start(sketch, "ImportedSketchClassWriter", tabs.size(), totalBytes);
+        ApplicationManager.getApplication().invokeAndWait(
+                new ImportedSketchClassWriter(getProject(), sketchPackage, convertedTabs, UUID.randomUUID().toString()), ModalityState.NON_MODAL);
+        phases.add(write.stop());
+
+        if (report) {
+            for (BenchmarkPhase phase : phases) {
+                System.out.println(phase);
+                logger.info(phase.toString());
+            }
+        }
+    }
+
+    /*
+        A package below the source root of the fixture module, into which the classes of a scenario are written.
+     */
+    @NotNull
+    private PsiDirectory createSketchPackage(@NotNull String packageName) {
+        final Computable<PsiDirectory> createPackage = () -> {
+            try {
+                VirtualFile packageDirectory = VfsUtil.createDirectories(myFixture.getTempDirPath() + "/" + packageName);
+                return PsiManager.getInstance(getProject()).findDirectory(packageDirectory);
+            } catch (IOException io) {
+                throw new IllegalStateException("Unable to create the benchmark package '" + packageName + "'.", io);
+            }
+        };
+
+        final Ref<PsiDirectory> sketchPackage = Ref.create();
+
+        ApplicationManager.getApplication().invokeAndWait(() ->
+                sketchPackage.set(ApplicationManager.getApplication().runWriteAction(createPackage)), ModalityState.NON_MODAL);
+
+        assertNotNull("Unable to find the benchmark package '" + packageName + "'.", sketchPackage.get());
+
+        return sketchPackage.get();
+    }
+
+    /**
+        Time and allocation of a single phase of a scenario. Allocation is summed over all live threads, as parsing runs on the
+        parsing executor rather than the calling thread; allocation by threads that terminate during the phase is not counted.
+     */
+    private static class BenchmarkPhase {
+        private final String scenario;
+        private final String phase;
+        private final int files;
+        private final long bytes;
+
+        private final long startNanos;
+        private final long startAllocatedBytes;
+
+        private long elapsedNanos;
+        private long allocatedBytes;
+
+        private BenchmarkPhase(@NotNull String scenario, @NotNull String phase, int files, long bytes) {
+            this.scenario = scenario;
+            this.phase = phase;
+            this.files = files;
+            this.bytes = bytes;
+            this.startAllocatedBytes = ImportMetrics.totalAllocatedBytes();
+            this.startNanos = System.nanoTime();
+        }
+
+        static BenchmarkPhase start(@NotNull SyntheticSketchbook sketch, @NotNull String phase, int files, long bytes) {
+            return new BenchmarkPhase(sketch.getName(), phase, files, bytes);
+        }
+
+        BenchmarkPhase stop() {
+            elapsedNanos = System.nanoTime() - startNanos;
+            allocatedBytes = startAllocatedBytes < 0 ? -1 : ImportMetrics.totalAllocatedBytes() - startAllocatedBytes;
+            return this;
+        }
+
+        static String header() {
+            return String.format("%-32s %-28s %8s %12s %12s %10s %14s", "scenario", "phase", "files", "time (ms)", "files/s", "MB/s", "allocated (MB)");
+        }
+
+        @Override
+        public String toString() {
+            double seconds = Math.max(elapsedNanos, 1) / 1e9;
+
+            return String.format("%-32s %-28s %8d %12.1f %12.1f %10.2f %14.1f", scenario, phase, files, elapsedNanos / 1e6,
+                    files / seconds, bytes / seconds / (1024 * 1024), allocatedBytes < 0 ? -1.0 : allocatedBytes / (1024.0 * 1024));
+        }
+    }
+}
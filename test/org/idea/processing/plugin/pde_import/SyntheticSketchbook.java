@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.pde_import;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+    Generates sketches of a given shape on disk, for benchmarking the import. Each sketch has a main tab declaring setup() and
+    draw(), and further tabs each declaring a class, so that the generated sketch passes through every stage of the import.
+ */
+class SyntheticSketchbook {
+
+    enum TabSize {
+        SMALL(4), HUGE(400);
+
+        private final int methodsPerTab;
+
+        TabSize(int methodsPerTab) {
+            this.methodsPerTab = methodsPerTab;
+        }
+    }
+
+    private final int tabCount;
+    private final TabSize tabSize;
+    private final boolean useColor;
+    private final boolean useImports;
+
+    SyntheticSketchbook(int tabCount, @NotNull TabSize tabSize, boolean useColor, boolean useImports) {
+        this.tabCount = tabCount;
+        this.tabSize = tabSize;
+        this.useColor = useColor;
+        this.useImports = useImports;
+    }
+
+    @NotNull
+    String getName() {
+        return "tabs" + tabCount + "_" + tabSize.name().toLowerCase() + (useColor ? "_color" : "") + (useImports ? "_imports" : "");
+    }
+
+    /*
+        Write the sketch below the given directory, returning the generated tabs, main tab first.
+     */
+    @NotNull
+    List<File> generate(@NotNull File parentDirectory) throws IOException {
+        File sketchDirectory = new File(parentDirectory, getName());
+
+        if (! sketchDirectory.isDirectory() && ! sketchDirectory.mkdirs()) {
+            throw new IOException("Unable to create the synthetic sketch directory '" + sketchDirectory + "'.");
+        }
+
+        List<File> tabs = new ArrayList<>(tabCount);
+
+        tabs.add(writeTab(sketchDirectory, getName(), mainTab()));
+
+        for (int tab = 1; tab < tabCount; tab++) {
+            tabs.add(writeTab(sketchDirectory, "Tab" + tab, classTab(tab)));
+        }
+
+        return tabs;
+    }
+
+    @NotNull
+    private File writeTab(@NotNull File sketchDirectory, @NotNull String tabName, @NotNull String content) throws IOException {
+        File tabFile = new File(sketchDirectory, tabName + ".pde");
+        Files.write(tabFile.toPath(), content.getBytes(StandardCharsets.UTF_8));
+
+        return tabFile;
+    }
+
+    @NotNull
+    private String mainTab() {
+        StringBuilder tab = new StringBuilder();
+
+        appendImports(tab);
+
+        tab.append(useColor ? "color background = 0;\n" : "int background = 0;\n");
+        tab.append("Tab1 first;\n\n");
+        tab.append("void settings() {\n  size(640, 480);\n}\n\n");
+        tab.append("void setup() {\n  first = new Tab1();\n}\n\n");
+        tab.append("void draw() {\n  background(background);\n}\n\n");
+
+        for (int method = 0; method < tabSize.methodsPerTab; method++) {
+            appendMethod(tab, method);
+        }
+
+        return tab.toString();
+    }
+
+    @NotNull
+    private String classTab(int tabIndex) {
+        StringBuilder tab = new StringBuilder();
+
+        appendImports(tab);
+
+        tab.append("class Tab").append(tabIndex).append(" {\n");
+        tab.append(useColor ? "  color fill = 255;\n" : "  int fill = 255;\n");
+
+        for (int method = 0; method < tabSize.methodsPerTab; method++) {
+            appendMethod(tab, method);
+        }
+
+        tab.append("}\n");
+
+        return tab.toString();
+    }
+
+    private void appendImports(@NotNull StringBuilder tab) {
+        if (useImports) {
+            tab.append("import java.util.List;\n");
+            tab.append("import java.util.ArrayList;\n\n");
+        }
+    }
+
+    private void appendMethod(@NotNull StringBuilder tab, int method) {
+        tab.append("  int compute").append(method).append("(int x) {\n");
+
+        if (useColor) {
+            tab.append("    color shade = #FF8800;\n");
+        } else {
+            tab.append("    int shade = x;\n");
+        }
+
+        tab.append("    float scale = 0.5;\n");
+        tab.append("    int total = 0;\n");
+        tab.append("    for (int i = 0; i < x; i++) {\n");
+        tab.append("      total += int(i * scale) * shade;\n");
+        tab.append("    }\n");
+        tab.append("    return total;\n");
+        tab.append("  }\n\n");
+    }
+}
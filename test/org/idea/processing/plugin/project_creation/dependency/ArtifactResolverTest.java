@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2017  mistodev
+ *
+ * This file is part of "Processing IDEA plugin" and is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.idea.processing.plugin.project_creation.dependency;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.testFramework.LightPlatformTestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+    Resolves POMs against a repository of the Maven layout on the local file system, standing in for a remote repository.
+ */
+public class ArtifactResolverTest extends LightPlatformTestCase {
+
+    private File repositoryRoot;
+    private File dependencyRoot;
+    private URL repository;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        repositoryRoot = FileUtil.createTempDirectory("processing-fixture-repository", null);
+        dependencyRoot = FileUtil.createTempDirectory("processing-dependency-root", null);
+        repository = new URL(StringUtil.trimEnd(repositoryRoot.toURI().toString(), "/"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            FileUtil.delete(repositoryRoot);
+            FileUtil.delete(dependencyRoot);
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void testResolvesTransitiveDependenciesThroughParentPoms() throws Exception {
+        publishPom("org.example", "parent", "1", "<packaging>pom</packaging>" +
+                "<properties><transitive.version>1.1</transitive.version></properties>" +
+                "<dependencyManagement><dependencies>" + dependency("org.example", "transitive", "${transitive.version}", null) +
+                "</dependencies></dependencyManagement>");
+        publishArtifact("com.example", "lib.core", "2.0", "<parent><groupId>org.example</groupId><artifactId>parent</artifactId><version>1</version></parent>" +
+                "<dependencies>" + dependency("org.example", "transitive", null, null) + dependency("org.example", "tests-only", "1.0", "test") + "</dependencies>", true);
+        publishArtifact("org.example", "transitive", "1.1", "", false);
+
+        List<File> jars = resolve(dependency("com.example", "lib.core", "2.0", null));
+
+        assertEquals(new HashSet<>(Arrays.asList("lib.core-2.0.jar", "transitive-1.1.jar")), fileNames(jars));
+    }
+
+    public void testSkipsDependenciesWithoutAVersion() throws Exception {
+        publishArtifact("org.example", "versioned", "1.0", "", true);
+
+        List<File> jars = resolve(dependency("org.example", "versioned", "1.0", null) + dependency("org.example", "unmanaged", null, null));
+
+        assertEquals(Collections.singleton("versioned-1.0.jar"), fileNames(jars));
+    }
+
+    public void testNearestDeclarationWins() throws Exception {
+        publishArtifact("org.example", "shared", "1.0", "", true);
+        publishArtifact("org.example", "shared", "2.0", "", true);
+        publishArtifact("org.example", "library", "1.0", "<dependencies>" + dependency("org.example", "shared", "2.0", null) + "</dependencies>", true);
+
+        List<File> jars = resolve(dependency("org.example", "library", "1.0", null) + dependency("org.example", "shared", "1.0", null));
+
+        assertEquals(new HashSet<>(Arrays.asList("library-1.0.jar", "shared-1.0.jar")), fileNames(jars));
+    }
+
+    public void testRejectsJarsNotMatchingTheirPublishedChecksum() throws Exception {
+        publishArtifact("org.example", "tampered", "1.0", "", false);
+        write("org/example/tampered/1.0/tampered-1.0.jar.sha1", StringUtil.repeat("0", 40));
+
+        try {
+            resolve(dependency("org.example", "tampered", "1.0", null));
+            fail("A jar not matching its published checksum was accepted.");
+        } catch (IOException expected) {
+            // The checksum mismatch fails the resolution.
+        }
+    }
+
+    public void testIgnoresChecksumFilesThatHoldNoChecksum() throws Exception {
+        publishArtifact("org.example", "proxied", "1.0", "", false);
+        write("org/example/proxied/1.0/proxied-1.0.jar.sha1", "<html><body>Proxy login</body></html>");
+
+        List<File> jars = resolve(dependency("org.example", "proxied", "1.0", null));
+
+        assertEquals(Collections.singleton("proxied-1.0.jar"), fileNames(jars));
+    }
+
+    public void testLinksJarsAlreadyInTheStore() throws Exception {
+        publishArtifact("org.example", "stored", "1.0", "", true);
+
+        resolve(dependency("org.example", "stored", "1.0", null));
+
+        // Once stored, the jar is linked from the store, even where the repository no longer serves it.
+        FileUtil.delete(new File(repositoryRoot, "org/example/stored/1.0/stored-1.0.jar"));
+
+        List<File> jars = new ArtifactResolver(Collections.singletonList(repository)).resolve(writeProjectPom(dependency("org.example", "stored", "1.0", null)),
+                new File(dependencyRoot, "second"));
+
+        assertEquals(Collections.singleton("stored-1.0.jar"), fileNames(jars));
+        assertEquals(jarContents("org.example", "stored", "1.0"), FileUtil.loadFile(jars.get(0), StandardCharsets.UTF_8));
+    }
+
+    @NotNull
+    private List<File> resolve(@NotNull String dependencies) throws IOException {
+        return new ArtifactResolver(Collections.singletonList(repository)).resolve(writeProjectPom(dependencies), new File(dependencyRoot, "first"));
+    }
+
+    @NotNull
+    private File writeProjectPom(@NotNull String dependencies) throws IOException {
+        File projectPom = new File(dependencyRoot, "pom.xml");
+        FileUtil.writeToFile(projectPom, pom("org.example", "project", "1.0", "<dependencies>" + dependencies + "</dependencies>"));
+
+        return projectPom;
+    }
+
+    private void publishArtifact(@NotNull String groupId, @NotNull String artifactId, @NotNull String version,
+                                 @NotNull String pomContent, boolean publishChecksum) throws Exception {
+        publishPom(groupId, artifactId, version, pomContent);
+
+        String jarPath = artifactPath(groupId, artifactId, version) + ".jar";
+        String jarContents = jarContents(groupId, artifactId, version);
+
+        write(jarPath, jarContents);
+
+        if (publishChecksum) {
+            write(jarPath + ".sha1", StringUtil.toHexString(MessageDigest.getInstance("SHA-1").digest(jarContents.getBytes(StandardCharsets.UTF_8)))
+                    + "  " + artifactId + "-" + version + ".jar");
+        }
+    }
+
+    private void publishPom(@NotNull String groupId, @NotNull String artifactId, @NotNull String version, @NotNull String pomContent) throws IOException {
+        write(artifactPath(groupId, artifactId, version) + ".pom", pom(groupId, artifactId, version, pomContent));
+    }
+
+    private void write(@NotNull String path, @NotNull String text) throws IOException {
+        FileUtil.writeToFile(new File(repositoryRoot, path), text);
+    }
+
+    /*
+        The dots of the group ID separate directories, and those of the artifact ID are kept, as in a Maven repository.
+     */
+    @NotNull
+    private static String artifactPath(@NotNull String groupId, @NotNull String artifactId, @NotNull String version) {
+        return groupId.replace('.', '/') + "/" + artifactId + "/" + version + "/" + artifactId + "-" + version;
+    }
+
+    @NotNull
+    private static String jarContents(@NotNull String groupId, @NotNull String artifactId, @NotNull String version) {
+        return "jar of " + groupId + ":" + artifactId + ":" + version;
+    }
+
+    @NotNull
+    private static String pom(@NotNull String groupId, @NotNull String artifactId, @NotNull String version, @NotNull String content) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<project><modelVersion>4.0.0</modelVersion>" +
+                "<groupId>" + groupId + "</groupId><artifactId>" + artifactId + "</artifactId><version>" + version + "</version>" +
+                content + "</project>";
+    }
+
+    @NotNull
+    private static String dependency(@NotNull String groupId, @NotNull String artifactId, String version, String scope) {
+        return "<dependency><groupId>" + groupId + "</groupId><artifactId>" + artifactId + "</artifactId>" +
+                (version == null ? "" : "<version>" + version + "</version>") +
+                (scope == null ? "" : "<scope>" + scope + "</scope>") + "</dependency>";
+    }
+
+    @NotNull
+    private static Set<String> fileNames(@NotNull List<File> files) {
+        Set<String> fileNames = new HashSet<>();
+
+        for (File file : files) {
+            fileNames.add(file.getName());
+        }
+
+        return fileNames;
+    }
+}